@@ -0,0 +1,211 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation regression check for the steady state: ticking, rendering
+ * (every LED backend) and button handling must not allocate anything once
+ * they are warmed up, since on a 512MB board every GC pause is a visible
+ * stutter. Uses HotSpot's per-thread allocated bytes counter, so it measures
+ * exactly the thread running each path. Each path runs until the JIT has
+ * compiled it and is then measured over fresh batches of iterations.
+ *
+ * Exits with status 1 if any path allocates (the check-allocations target
+ * in build.xml runs it as part of the build).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class AllocationCheck {
+
+  private static final com.sun.management.ThreadMXBean THREADS
+      = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_BATCHES = 3;
+  private static final long WINDOW_MS = 1000;
+
+  private static interface HotPath {
+    public void run(int i) throws IOException;
+  }
+
+  private static boolean ok = true;
+  private static long sink;
+
+  public static void main(String[] args) throws Exception {
+    long ms = TimeUnit.MILLISECONDS.toNanos(1);
+
+    SimulatedBoard ticking = board(new TimerState(0x3FFF << 3), false);
+    check("tick and render (125us)", 20000, i -> ticking.runFor(1, TimeUnit.MILLISECONDS));
+
+    SimulatedBoard blinking = board(new TimerState(1 << 3), true);
+    check("expired blink, event driven", 20000, i -> blinking.runFor(1, TimeUnit.MILLISECONDS));
+
+    SimulatedBoard buttons = board(new TimerState(0x3FFF << 3), false);
+    check("button edges through the queue", 20000, i -> {
+      buttons.edge(i % 2 == 0 ? TimerState.BLUE : TimerState.GREEN, true, buttons.nanoTime());
+      buttons.edge(i % 2 == 0 ? TimerState.BLUE : TimerState.GREEN, false, buttons.nanoTime() + 20 * ms);
+      buttons.runFor(40, TimeUnit.MILLISECONDS);
+    });
+
+    SimulatedBoard polled = board(new TimerState(0x3FFF << 3), false);
+    polled.pollButtons(1, TimeUnit.MILLISECONDS, 5);
+    check("polled buttons", 5000, i -> {
+      polled.press(TimerState.GREEN, polled.nanoTime(), 20, TimeUnit.MILLISECONDS);
+      polled.runFor(40, TimeUnit.MILLISECONDS);
+    });
+
+    Path file = Files.createTempFile("alloc", ".trace");
+    try (TraceRecorder trace = new TraceRecorder(file, 1 << 12)) {
+      SimulatedBoard traced = new SimulatedBoard(new TimerState(0x3FFF << 3), 125000, TimeUnit.NANOSECONDS);
+      traced.setRecording(false);
+      traced.getLoop().setTrace(trace);
+      traced.press(TimerState.GREEN, 0, 20, TimeUnit.MILLISECONDS);
+      check("tick and render with a trace", 20000, i -> traced.runFor(1, TimeUnit.MILLISECONDS));
+    } finally {
+      Files.delete(file);
+    }
+
+    Path state = Files.createTempFile("alloc", ".state");
+    try (Checkpoint checkpoint = new Checkpoint(state)) {
+      SimulatedBoard saved = board(new TimerState(0x3FFF << 3), false);
+      saved.getLoop().setCheckpoint(checkpoint);
+      check("tick and render with a checkpoint", 20000, i -> saved.runFor(1, TimeUnit.MILLISECONDS));
+    } finally {
+      Files.delete(state);
+    }
+
+    Path shared = Files.createTempFile("alloc", ".frame");
+    try (FrameExport export = new FrameExport(shared);
+        FrameExport.Reader reader = new FrameExport.Reader(shared)) {
+      SimulatedBoard exported = board(new TimerState(0x3FFF << 3), false);
+      exported.getLoop().setExport(export);
+      check("tick and render with a frame export", 20000, i -> exported.runFor(1, TimeUnit.MILLISECONDS));
+      check("FrameExport.Reader", 100000, i -> sink += reader.read() ? reader.getCounter() : 0);
+    } finally {
+      Files.delete(shared);
+    }
+
+    BroadcastServer broadcast = new BroadcastServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    Thread server = new Thread(broadcast, "Broadcast");
+    server.start();
+    SimulatedBoard published = board(new TimerState(0x3FFF << 3), false);
+    published.getLoop().setBroadcast(broadcast);
+    check("tick and render with a broadcast", 20000, i -> published.runFor(1, TimeUnit.MILLISECONDS));
+    broadcast.close();
+    server.join();
+
+    MemoryPins pins = new MemoryPins();
+    FrameRenderer renderer = new FrameRenderer(17, pins);
+    check("FrameRenderer", 100000, i -> renderer.show(i));
+    PortLeds port = new PortLeds(17, pins);
+    check("PortLeds", 100000, i -> port.show(i));
+    ShiftRegisterLeds shift = new ShiftRegisterLeds(32, new ShiftRegisterChain(4));
+    check("ShiftRegisterLeds", 100000, i -> shift.show(i * 0x9E3779B97F4A7C15L));
+    ByteBuffer registers = ByteBuffer.allocateDirect(GpioRegisterLeds.BLOCK_SIZE);
+    GpioRegisterLeds gpio = new GpioRegisterLeds(registers, 2, 3, 4, 17, 27, 22, 10, 9, 11, 5, 6, 13, 19, 26, 14, 15, 18);
+    check("GpioRegisterLeds", 100000, i -> gpio.show(i));
+    GpioRegisterButtons sampler = new GpioRegisterButtons(registers, 14, 13, 12, 3);
+    check("GpioRegisterButtons", 100000, i -> sink += sampler.sample());
+    LatestValue handoff = new LatestValue(0);
+    RenderStage stage = new RenderStage(handoff, renderer, 1, 1, TimeUnit.MILLISECONDS);
+    check("RenderStage", 100000, i -> {
+      handoff.publish((long) i << 1 | (i & 1));
+      stage.render(i * 1000L);
+    });
+    TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 256, "Wheel");
+    TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+      @Override
+      protected void expire() {
+      }
+    };
+    check("TimingWheel reschedule (debounce)", 100000, i -> wheel.schedule(timeout, 1000, TimeUnit.MILLISECONDS));
+
+    long[] groupTime = {0};
+    TimerGroup group = new TimerGroup(1000, 1, TimeUnit.MILLISECONDS, () -> groupTime[0]);
+    for (int i = 0; i < 1000; i++) {
+      group.add(new TimerState(0x3FFF << 3), renderer, 10 + i % 7, TimeUnit.MILLISECONDS);
+    }
+    group.start();
+    check("TimerGroup, 1000 timers", 20000, i -> {
+      if (i % 100 == 0) {
+        group.submit(i / 100 % 1000, TimerState.GREEN, true);
+      }
+      groupTime[0] += ms;
+      group.step();
+    });
+
+    // The threads that run by themselves, measured from outside
+    TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), renderer, 125000, TimeUnit.NANOSECONDS, () -> {});
+    loop.setSpinWait(20, TimeUnit.MICROSECONDS);
+    loop.submit(TimerState.GREEN, true);
+    checkThread("TimerLoop.run (125us)", loop, loop::stop);
+    BcmEngine bcm = new BcmEngine(renderer, 3, 10, TimeUnit.MILLISECONDS);
+    bcm.setBrightness(0x7, 3);
+    bcm.show(0x1FFFF);
+    checkThread("BcmEngine.run", bcm, bcm::stop);
+    handoff.publish((System.nanoTime() + TimeUnit.MINUTES.toNanos(1)) << 1 | 1);
+    RenderStage running = new RenderStage(handoff, renderer, 1, 1, TimeUnit.MILLISECONDS);
+    checkThread("RenderStage.run (1ms)", running, running::stop);
+
+    if (!ok) {
+      System.out.println("FAILED: steady state allocates");
+      System.exit(1);
+    }
+  }
+
+  private static SimulatedBoard board(TimerState state, boolean event) {
+    SimulatedBoard board = new SimulatedBoard(state, 125000, TimeUnit.NANOSECONDS);
+    board.setRecording(false);
+    board.getLoop().setEventDriven(event);
+    board.press(TimerState.GREEN, 0, 20, TimeUnit.MILLISECONDS);
+    return board;
+  }
+
+  private static void check(String name, int iterations, HotPath path) throws IOException {
+    long thread = Thread.currentThread().getId();
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (int i = 0; i < iterations; i++) {
+        path.run(i);
+      }
+    }
+    // One-off work (deoptimization, lazy initialization) can land in any
+    // single batch, but a path that really allocates does so every batch
+    long allocated = Long.MAX_VALUE;
+    for (int batch = 0; batch < MEASURED_BATCHES && allocated > 0; batch++) {
+      long before = THREADS.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < iterations; i++) {
+        path.run(i);
+      }
+      allocated = Math.min(allocated, THREADS.getThreadAllocatedBytes(thread) - before);
+    }
+    report(name, iterations + " calls", allocated);
+  }
+
+  private static void checkThread(String name, Runnable task, Runnable stop) throws InterruptedException {
+    Thread thread = new Thread(task, name);
+    thread.start();
+    Thread.sleep(WINDOW_MS * WARMUP_ROUNDS / 2);
+    // Same as check(): the least over several windows, so one-off work in
+    // any single window doesn't count
+    long allocated = Long.MAX_VALUE;
+    for (int window = 0; window < MEASURED_BATCHES && allocated > 0; window++) {
+      long before = THREADS.getThreadAllocatedBytes(thread.getId());
+      Thread.sleep(WINDOW_MS);
+      allocated = Math.min(allocated, THREADS.getThreadAllocatedBytes(thread.getId()) - before);
+    }
+    stop.run();
+    thread.join();
+    report(name, WINDOW_MS + "ms", allocated);
+  }
+
+  private static void report(String name, String amount, long allocated) {
+    System.out.printf("%-36s %14s: %d bytes%n", name, amount, allocated);
+    ok &= allocated == 0;
+  }
+}
@@ -0,0 +1,71 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a BcmEngine (3 bits, 100Hz refresh) for a few seconds with eight
+ * LEDs lit at levels 0 to 7, measures how long each LED was actually on, and
+ * prints the duty cycles next to the expected level/7, along with the
+ * refresh rate and plane timing error. Exits with status 1 if a duty cycle
+ * is off by more than 5 points.
+ *
+ * Usage: BcmCheck [bits] [refreshMicros]
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BcmCheck {
+
+  private static final long SECONDS = 3;
+
+  private static final long[] onTime = new long[8];
+  private static long lastFrame;
+  private static long lastShow;
+  private static long writes;
+
+  public static void main(String[] args) throws InterruptedException {
+    int bits = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+    long refresh = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+    int levels = (1 << bits) - 1;
+    LedBank recorder = frame -> {
+      long now = System.nanoTime();
+      if (lastShow != 0) {
+        for (int led = 0; led < onTime.length; led++) {
+          if ((lastFrame >>> led & 0x1) != 0) {
+            onTime[led] += now - lastShow;
+          }
+        }
+      }
+      lastShow = now;
+      lastFrame = frame;
+      writes++;
+    };
+    BcmEngine engine = new BcmEngine(recorder, bits, refresh, TimeUnit.MICROSECONDS);
+    for (int led = 0; led < onTime.length; led++) {
+      engine.setBrightness(1L << led, led * levels / (onTime.length - 1));
+    }
+    engine.show(0xFF);
+    Thread thread = new Thread(engine, "BCM");
+    long start = System.nanoTime();
+    thread.start();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+    engine.stop();
+    thread.join();
+    long elapsed = lastShow - start;
+
+    LogLinearHistogram error = engine.getPlaneError();
+    System.out.printf("refresh=%.1fHz (target %.1fHz) overruns=%d writes/refresh=%.1f plane error p50=%dus p99=%dus max=%dus%n",
+        engine.getRefreshRate(), 1e6 / refresh, engine.getOverruns(), (double) writes / engine.getRefreshes(),
+        error.getPercentile(50) / 1000, error.getPercentile(99) / 1000, error.getMax() / 1000);
+    boolean failed = false;
+    for (int led = 0; led < onTime.length; led++) {
+      double expected = (double) (led * levels / (onTime.length - 1)) / levels;
+      double duty = (double) onTime[led] / elapsed;
+      System.out.printf("LED %d: duty %.3f, expected %.3f%n", led, duty, expected);
+      failed |= Math.abs(duty - expected) > 0.05;
+    }
+    if (failed) {
+      System.out.println("FAILED: duty cycle off");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.nighthacking.binarytimer;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioFactory;
+import com.pi4j.io.gpio.GpioPinDigitalOutput;
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.wiringpi.Gpio;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import jdk.dio.DeviceManager;
+import jdk.dio.gpio.GPIOPin;
+
+/**
+ * The LED backends the benchmarks can run against. "memory", "register" and
+ * "sysfs" work on any Linux box (register maps a temp file and sysfs uses a
+ * FakeSysfs tree unless a real root is given), while "wiringpi", "pi4j" and
+ * "dio" need the real board ("dio" also needs -Djdk.dio.registry pointing at
+ * BinaryTimerDIO's dio.properties).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BenchBackend implements Closeable {
+
+  // BCM GPIO numbers, bit 0 first (same wiring as config/dio.properties)
+  static final int[] GPIO_PINS = {
+    26, 19, 13, 6, 5, 21, 20, 16, 12, 7, 8, 25, 24, 23, 18, 15, 14
+  };
+
+  // wiringPi numbers for the same pins (BinaryMillisecondTimerPi4JRaw.LED_PINS)
+  static final int[] WIRINGPI_PINS = {
+    25, 24, 23, 22, 21, 29, 28, 27, 26, 11, 10, 6, 5, 4, 1, 16, 15
+  };
+
+  private final FrameRenderer.PinWriter pin;
+  private final LedBank leds;
+  private final Closeable resources;
+
+  private BenchBackend(FrameRenderer.PinWriter pin, LedBank leds, Closeable resources) {
+    this.pin = pin;
+    this.leds = leds;
+    this.resources = resources;
+  }
+
+  private BenchBackend(FrameRenderer.PinWriter pin, Closeable resources) {
+    this(pin, new FrameRenderer(17, pin), resources);
+  }
+
+  public static BenchBackend open(String name, String sysfsRoot) throws IOException {
+    switch (name) {
+      case "memory":
+        return new BenchBackend(new MemoryPins(), () -> {});
+      case "register":
+        Path file = Files.createTempFile("gpiomem", null);
+        GpioRegisterLeds registers = new GpioRegisterLeds(GpioRegisterLeds.map(file), GPIO_PINS);
+        registers.configureOutputs();
+        return new BenchBackend(registers, registers, () -> Files.delete(file));
+      case "sysfs":
+        FakeSysfs fake = sysfsRoot.isEmpty() ? new FakeSysfs(GPIO_PINS) : null;
+        SysfsGpio sysfs = new SysfsGpio(fake != null ? fake.getRoot() : Paths.get(sysfsRoot), GPIO_PINS);
+        return new BenchBackend(sysfs, () -> {
+          sysfs.close();
+          if (fake != null) {
+            fake.close();
+          }
+        });
+      case "wiringpi":
+        Gpio.wiringPiSetup();
+        for (int wiringPiPin : WIRINGPI_PINS) {
+          Gpio.pinMode(wiringPiPin, Gpio.OUTPUT);
+        }
+        return new BenchBackend((bit, value) -> Gpio.digitalWrite(WIRINGPI_PINS[bit], value ? 1 : 0), () -> {});
+      case "pi4j":
+        GpioController gpio = GpioFactory.getInstance();
+        GpioPinDigitalOutput[] outputs = new GpioPinDigitalOutput[WIRINGPI_PINS.length];
+        for (int i = 0; i < WIRINGPI_PINS.length; i++) {
+          outputs[i] = gpio.provisionDigitalOutputPin(RaspiPin.getPinByAddress(WIRINGPI_PINS[i]));
+        }
+        return new BenchBackend((bit, value) -> outputs[bit].setState(value), gpio::shutdown);
+      case "dio":
+        GPIOPin[] pins = new GPIOPin[17];
+        for (int i = 0; i < 17; i++) {
+          pins[i] = DeviceManager.open(i + 1);
+        }
+        return new BenchBackend((bit, value) -> pins[16 - bit].setValue(value), () -> {
+          for (GPIOPin p : pins) {
+            p.close();
+          }
+        });
+      default:
+        throw new IllegalArgumentException("Unknown backend: " + name);
+    }
+  }
+
+  public FrameRenderer.PinWriter getPin() {
+    return pin;
+  }
+
+  public LedBank getLeds() {
+    return leds;
+  }
+
+  @Override
+  public void close() throws IOException {
+    resources.close();
+  }
+}
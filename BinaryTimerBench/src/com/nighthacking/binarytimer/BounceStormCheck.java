@@ -0,0 +1,390 @@
+package com.nighthacking.binarytimer;
+
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.event.GpioPinDigitalStateChangeEvent;
+import com.pi4j.io.gpio.event.GpioPinListenerDigital;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import jdk.dio.DeviceDescriptor;
+import jdk.dio.gpio.GPIOPin;
+import jdk.dio.gpio.PinEvent;
+
+/**
+ * Load test for the interrupt-driven button path: storms of contact bounce
+ * on all four buttons at once, pushed through the same listener chains as
+ * the timers use, into a running TimerLoop (millisecond timer settings,
+ * in-memory LEDs). Two chains:
+ * - dio: DioDebouncer, PLHelper, then the listener from
+ * BinaryTimerDio.addListeners()
+ * - pi4j: Pi4jDebounce standing in for the setDebounce(20) that
+ * BinaryTimerPi4J provisions its buttons with (Pi4J does that inside the
+ * library, on real pins), then the GpioPinListenerDigital from
+ * BinaryTimerPi4J.addListeners()
+ *
+ * Each button is pressed for 100ms every 200ms, and both edges of every
+ * press bounce for 15ms (under the 20ms debounce interval) at the given rate
+ * per pin. One thread per pin sends the edges, in batches every 100us, and
+ * calls the listener directly like the DIO or Pi4J event thread would, so
+ * its CPU time is the listener thread's (making the events included).
+ *
+ * Each chain and rate is one row of the envelope; it passes if:
+ * - every press comes out as one press and one release, with at most
+ * MAX_DUPLICATES (none) extra of either, none lost, and none dropped by the
+ * command queue. A pin thread that gets switched out part way through a
+ * storm can stretch it past the debounce window, and then the listener
+ * rightly sees more than one press; those storms are counted as late, and
+ * the duplicates on that button are reported but don't fail the row.
+ * - every button ends up released (the last edge of each storm got through)
+ * - the listener threads use under half a core, and the clock's p99
+ * lateness is within a millisecond of the clean (rate 0, no bounce) run
+ *
+ * The last of those depends on the machine not being busy with anything
+ * else, so -Dbinarytimer.pressesOnly=true (as the check-behavior target in
+ * build.xml runs it) still reports the cpu and ticks limits but only fails a
+ * row on presses and stuck buttons.
+ *
+ * Usage: BounceStormCheck [presses [rate ...]]
+ *
+ * Exits with status 1 if any row fails.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BounceStormCheck {
+
+  private static final long PERIOD = TimeUnit.MICROSECONDS.toNanos(125);
+  private static final long CYCLE = TimeUnit.MILLISECONDS.toNanos(200);
+  private static final long HOLD = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long BOUNCE = TimeUnit.MILLISECONDS.toNanos(15);
+  private static final long BATCH = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final int DEBOUNCE_MS = 20;
+  // Extra presses or releases allowed through, per button, per row
+  private static final int MAX_DUPLICATES = 0;
+  // A storm that took longer than this to send may have outlasted the
+  // debounce window
+  private static final long LATE = TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MS - 2);
+  private static final double CPU_LIMIT = 0.5;
+  private static final long TICK_SLACK = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final boolean PRESSES_ONLY = Boolean.getBoolean("binarytimer.pressesOnly");
+  private static final String[] CHAINS = {"dio", "pi4j"};
+
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private static final TimingWheel PI4J_WHEEL = new TimingWheel(1, TimeUnit.MILLISECONDS, 256, "Pi4J debounce");
+  private static boolean failed;
+
+  /**
+   * One button's listener chain, from the pin's point of view.
+   */
+  private interface Pin {
+
+    public void edge(boolean pressed);
+  }
+
+  /**
+   * Counts what reaches the loop, and how late its ticks are.
+   */
+  private static class Counts implements TimerEvents {
+
+    final AtomicIntegerArray edges = new AtomicIntegerArray(8);
+    final AtomicLong dropped = new AtomicLong();
+    final boolean[] held = new boolean[4];
+    final LogLinearHistogram lateness = new LogLinearHistogram();
+    long missed;
+
+    @Override
+    public void tickBegin() {
+    }
+
+    @Override
+    public void tickEnd(long counter, long lateness, long missed) {
+      this.lateness.record(lateness);
+      this.missed = missed;
+    }
+
+    @Override
+    public void frameBegin() {
+    }
+
+    @Override
+    public void frameEnd(long frame) {
+    }
+
+    @Override
+    public void button(int button, boolean pressed, long latency, boolean dropped) {
+      if (dropped) {
+        this.dropped.incrementAndGet();
+      } else {
+        edges.incrementAndGet(button * 2 + (pressed ? 1 : 0));
+        held[button] = pressed;
+      }
+    }
+
+    @Override
+    public void debounce(int pin, boolean value, String decision) {
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int presses = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int[] rates = {0, 1000, 10000, 20000, 40000};
+    if (args.length > 1) {
+      rates = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        rates[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+    System.out.printf("%d presses per button, %dms bounce on each edge, clock every %dus%n", presses,
+        TimeUnit.NANOSECONDS.toMillis(BOUNCE), TimeUnit.NANOSECONDS.toMicros(PERIOD));
+    System.out.printf("%-5s %6s %7s %6s %5s %5s %7s %5s %5s %12s %8s %14s %6s%n", "chain", "rate", "edges",
+        "into", "dups", "lost", "dropped", "stuck", "late", "listener", "loop", "tick p99/max", "missed");
+    for (String chain : CHAINS) {
+      long baseline = -1;
+      for (int rate : rates) {
+        long p99 = run(chain, rate, presses, baseline);
+        if (rate == 0) {
+          baseline = p99;
+        }
+      }
+    }
+    if (failed) {
+      System.out.println("FAILED: outside the envelope");
+      System.exit(1);
+    }
+  }
+
+  // One row of the envelope; returns the clock's p99 lateness
+  private static long run(String chain, int rate, int presses, long baseline) throws InterruptedException {
+    Counts counts = new Counts();
+    TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), new FrameRenderer(17, new MemoryPins()),
+        PERIOD, TimeUnit.NANOSECONDS, () -> {});
+    loop.setEvents(counts);
+    Thread owner = new Thread(loop, "TimerLoop");
+    owner.start();
+    // get the clock running before the storm starts
+    loop.submit(TimerState.GREEN, true);
+    loop.submit(TimerState.GREEN, false);
+
+    Pin[] pins = new Pin[4];
+    for (int i = 0; i < 4; i++) {
+      pins[i] = chain.equals("dio") ? dioChain(loop, i) : pi4jChain(loop, i);
+    }
+    String wheelName = chain.equals("dio") ? "Debouncer" : "Pi4J debounce";
+    Thread wheel = thread(wheelName);
+    long wheelCpu = wheel == null ? 0 : threads.getThreadCpuTime(wheel.getId());
+    // let the debouncers get past their startup wobble
+    Thread.sleep(50);
+
+    AtomicLong sent = new AtomicLong();
+    AtomicIntegerArray late = new AtomicIntegerArray(4);
+    AtomicLong listenerCpu = new AtomicLong();
+    long loopCpu = threads.getThreadCpuTime(owner.getId());
+    long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+    Thread[] injectors = new Thread[4];
+    for (int i = 0; i < 4; i++) {
+      Pin pin = pins[i];
+      int button = i;
+      injectors[i] = new Thread(() -> {
+        long cpu = threads.getCurrentThreadCpuTime();
+        for (int press = 0; press < presses; press++) {
+          for (int edge = 0; edge < 2; edge++) {
+            long span = storm(pin, rate, start + press * CYCLE + edge * HOLD, edge == 0, sent);
+            if (span > LATE) {
+              late.incrementAndGet(button);
+            }
+          }
+        }
+        listenerCpu.addAndGet(threads.getCurrentThreadCpuTime() - cpu);
+      }, "Pin " + i);
+      injectors[i].start();
+    }
+    for (Thread injector : injectors) {
+      injector.join();
+    }
+    // past the last debounce window, and the loop has caught up
+    Thread.sleep(50);
+    long elapsed = System.nanoTime() - start;
+    if (wheel == null) {
+      wheel = thread(wheelName); // started by the first edge
+    }
+    if (wheel != null) {
+      listenerCpu.addAndGet(threads.getThreadCpuTime(wheel.getId()) - wheelCpu);
+    }
+    loopCpu = threads.getThreadCpuTime(owner.getId()) - loopCpu;
+    loop.stop();
+    owner.join();
+
+    long into = loop.getApplied() + loop.getDropped() - 2;
+    int dups = 0;
+    int maxDups = 0;
+    int lost = 0;
+    int stuck = 0;
+    int lateStorms = 0;
+    for (int button = 0; button < 4; button++) {
+      lateStorms += late.get(button);
+      for (int edge = 0; edge < 2; edge++) {
+        // minus the Green press that started the clock
+        int seen = counts.edges.get(button * 2 + edge) - (button == TimerState.GREEN ? 1 : 0);
+        dups += Math.max(0, seen - presses);
+        if (late.get(button) == 0) {
+          maxDups = Math.max(maxDups, seen - presses);
+        }
+        lost += Math.max(0, presses - seen);
+      }
+      stuck += counts.held[button] ? 1 : 0;
+    }
+    double cpu = (double) listenerCpu.get() / elapsed;
+    long p99 = counts.lateness.getPercentile(99);
+    StringBuilder why = new StringBuilder();
+    if (maxDups > MAX_DUPLICATES || lost > 0 || loop.getDropped() > 0) {
+      why.append(" presses");
+    }
+    if (stuck > 0) {
+      why.append(" stuck");
+    }
+    // wall clock limits, which only fail the row when timing counts
+    StringBuilder slow = PRESSES_ONLY ? new StringBuilder() : why;
+    if (cpu > CPU_LIMIT) {
+      slow.append(" cpu");
+    }
+    if (baseline >= 0 && p99 > baseline + TICK_SLACK) {
+      slow.append(" ticks");
+    }
+    failed |= why.length() > 0;
+    System.out.printf("%-5s %6d %7d %6d %5d %5d %7d %5d %5d %4.1f%% %4dns %7.1f%% %6dus/%5dus %6d %s%n", chain, rate,
+        sent.get(), into, dups, lost, loop.getDropped(), stuck, lateStorms, cpu * 100, listenerCpu.get() / Math.max(1, sent.get()),
+        100.0 * loopCpu / elapsed, p99 / 1000, counts.lateness.getMax() / 1000, counts.missed,
+        (why.length() == 0 ? "PASS" : "FAIL" + why) + (slow != why && slow.length() > 0 ? " (over:" + slow + ")" : ""));
+    return p99;
+  }
+
+  // BinaryTimerDio.addListeners(), for a pin with a DIO pull-up (true is
+  // released)
+  private static Pin dioChain(TimerLoop loop, int button) {
+    DioDebouncer debouncer = new DioDebouncer(new PLHelper(event -> {
+      loop.submit(button, !event.getValue());
+    }));
+    GPIOPin device = gpioPin(button + 18);
+    return pressed -> debouncer.valueChanged(new PinEvent(device, !pressed));
+  }
+
+  // BinaryTimerPi4J.addListeners(), behind setDebounce(20)
+  private static Pin pi4jChain(TimerLoop loop, int button) {
+    GpioPinListenerDigital listener = event -> {
+      loop.submit(button, event.getState().isLow());
+    };
+    return new Pi4jDebounce(listener, "button " + button);
+  }
+
+  /**
+   * The equivalent of Pi4J's setDebounce(20) for one pin with a pull-up: the
+   * first edge goes straight to the listener and opens a 20ms window, edges
+   * inside the window only change the pin's level, and when it closes the
+   * level is passed on (opening another window) if it isn't the one the
+   * listener last got.
+   */
+  private static class Pi4jDebounce extends TimingWheel.Timeout implements Pin {
+
+    private final GpioPinListenerDigital listener;
+    private final Object source;
+    private boolean level;
+    private boolean fired;
+    private boolean open;
+
+    Pi4jDebounce(GpioPinListenerDigital listener, Object source) {
+      this.listener = listener;
+      this.source = source;
+    }
+
+    @Override
+    public synchronized void edge(boolean pressed) {
+      level = pressed;
+      if (!open) {
+        fire();
+      }
+    }
+
+    @Override
+    protected synchronized void expire() {
+      open = false;
+      if (level != fired) {
+        fire();
+      }
+    }
+
+    private void fire() {
+      fired = level;
+      open = true;
+      PI4J_WHEEL.schedule(this, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+      listener.handleGpioPinDigitalStateChangeEvent(
+          new GpioPinDigitalStateChangeEvent(source, null, level ? PinState.LOW : PinState.HIGH));
+    }
+  }
+
+  // Just enough of a GPIOPin for the debouncer to tell the pins apart
+  private static GPIOPin gpioPin(int id) {
+    DeviceDescriptor<?> descriptor = (DeviceDescriptor<?>) Proxy.newProxyInstance(
+        BounceStormCheck.class.getClassLoader(), new Class<?>[]{DeviceDescriptor.class}, (proxy, method, args) -> {
+          if (method.getName().equals("getID")) {
+            return id;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+    return (GPIOPin) Proxy.newProxyInstance(BounceStormCheck.class.getClassLoader(), new Class<?>[]{GPIOPin.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getDescriptor":
+              return descriptor;
+            case "hashCode":
+              return id;
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "GPIOPin " + id;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /**
+   * Sends one edge of a press at from, bouncing at rate edges per second for
+   * BOUNCE before settling (a rate of 0 is a clean edge), adding the edges
+   * to sent.
+   *
+   * @return how long it took from the first edge to the last
+   */
+  private static long storm(Pin pin, int rate, long from, boolean pressed, AtomicLong sent) {
+    // an odd number of edges, so it settles where it started heading
+    int edges = (int) (rate * BOUNCE / TimeUnit.SECONDS.toNanos(1)) | 1;
+    long interval = BOUNCE / edges;
+    for (long wait = from - System.nanoTime(); wait > 0; wait = from - System.nanoTime()) {
+      LockSupport.parkNanos(wait);
+    }
+    long first = System.nanoTime();
+    int edge = 0;
+    while (edge < edges) {
+      long due = Math.min(edges, (System.nanoTime() - from) / interval + 1);
+      for (; edge < due; edge++) {
+        pin.edge(edge % 2 == 0 == pressed);
+      }
+      if (edge < edges) {
+        LockSupport.parkNanos(BATCH);
+      }
+    }
+    sent.addAndGet(edges);
+    return System.nanoTime() - first;
+  }
+
+  private static Thread thread(String name) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(name)) {
+        return thread;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,161 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Load test for BroadcastServer over loopback: a few thousand clients
+ * reading on one selector thread, plus a handful that connect and never
+ * read, while the main thread publishes a counting down value every few
+ * milliseconds the way the clock thread would. Prints the fan-out latency
+ * (from publish() to a client decoding that value, which includes waiting
+ * for the server's next refresh, up to 20ms), how long publish()
+ * itself took, and the heap per connection (both ends, since the clients are
+ * in the same JVM).
+ *
+ * Exits with status 1 if any reading client doesn't end up on the last
+ * value. The publish() times are wall clock, so on a single core they
+ * include whenever the scheduler ran the server or the clients instead.
+ *
+ * Usage: BroadcastLoadCheck [clients [updates]]
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BroadcastLoadCheck {
+
+  private static final int SLOW_CLIENTS = 20;
+  private static final long PUBLISH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long START = 1 << 20;
+
+  private static long[] publishTimes;
+  private static final LogLinearHistogram latency = new LogLinearHistogram();
+  private static volatile boolean reading = true;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int updates = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    publishTimes = new long[updates];
+
+    BroadcastServer server = new BroadcastServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    Thread serverThread = new Thread(server, "Broadcast");
+    serverThread.start();
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+    long before = usedHeap();
+    Selector selector = Selector.open();
+    BroadcastServer.Decoder[] decoders = new BroadcastServer.Decoder[clients];
+    for (int i = 0; i < clients; i++) {
+      SocketChannel channel = SocketChannel.open(address);
+      channel.configureBlocking(false);
+      decoders[i] = new BroadcastServer.Decoder();
+      channel.register(selector, SelectionKey.OP_READ, decoders[i]);
+    }
+    SocketChannel[] slow = new SocketChannel[SLOW_CLIENTS];
+    for (int i = 0; i < SLOW_CLIENTS; i++) {
+      slow[i] = SocketChannel.open();
+      slow[i].setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+      slow[i].connect(address);
+    }
+    while (server.getClients() < clients + SLOW_CLIENTS) {
+      Thread.sleep(10);
+    }
+    long perConnection = (usedHeap() - before) / (clients + SLOW_CLIENTS);
+
+    Thread readerThread = new Thread(() -> read(selector), "Clients");
+    readerThread.start();
+    LogLinearHistogram publish = new LogLinearHistogram();
+    long next = System.nanoTime();
+    for (int i = 0; i < updates; i++) {
+      next += PUBLISH_INTERVAL;
+      while (System.nanoTime() - next < 0) {
+        Thread.sleep(1);
+      }
+      long start = System.nanoTime();
+      publishTimes[i] = start;
+      server.publish(START - i, i == updates - 1);
+      publish.record(System.nanoTime() - start);
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int behind;
+    do {
+      Thread.sleep(10);
+      behind = 0;
+      for (BroadcastServer.Decoder decoder : decoders) {
+        if (decoder.getCounter() != START - updates + 1 || !decoder.isPaused()) {
+          behind++;
+        }
+      }
+    } while (behind > 0 && System.nanoTime() - deadline < 0);
+    reading = false;
+    selector.wakeup();
+    readerThread.join();
+    server.close();
+    serverThread.join();
+    for (SocketChannel channel : slow) {
+      channel.close();
+    }
+
+    System.out.printf("%d clients (+%d not reading), %d updates: fan-out p50=%dus p99=%dus max=%dus, "
+        + "publish p99=%dus max=%dus, %d messages, %d coalesced, ~%d bytes heap per connection%n",
+        clients, SLOW_CLIENTS, updates, latency.getPercentile(50) / 1000, latency.getPercentile(99) / 1000,
+        latency.getMax() / 1000, publish.getPercentile(99) / 1000, publish.getMax() / 1000,
+        server.getMessages(), server.getCoalesced(), perConnection);
+    if (behind > 0) {
+      System.out.println("FAILED: " + behind + " clients never got the last value");
+      System.exit(1);
+    }
+  }
+
+  private static void read(Selector selector) {
+    ByteBuffer in = ByteBuffer.allocateDirect(4096);
+    try {
+      while (reading) {
+        selector.select();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          BroadcastServer.Decoder decoder = (BroadcastServer.Decoder) key.attachment();
+          in.clear();
+          if (((SocketChannel) key.channel()).read(in) < 0) {
+            key.cancel();
+            continue;
+          }
+          in.flip();
+          while (decoder.read(in)) {
+            long update = START - decoder.getCounter();
+            if (update >= 0 && update < publishTimes.length) {
+              latency.record(System.nanoTime() - publishTimes[(int) update]);
+            }
+          }
+        }
+      }
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+      selector.close();
+    } catch (IOException ex) {
+      Logger.getLogger(BroadcastLoadCheck.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,198 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a Checkpoint always restores either the last save or the one
+ * before it, however the last save was torn. Takes the file before and
+ * after a save, and writes back every mix of the two that a crash could
+ * leave behind (every prefix of the slot, every combination of its four
+ * words, and random combinations of its bytes in case the page went out in
+ * pieces), restoring from each. Also checks the catch-up for a running
+ * timer, that a corrupt file restores nothing, and a restart of a TimerLoop
+ * saving as it renders.
+ *
+ * Exits with status 1 on the first wrong restore.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class CheckpointCheck {
+
+  private static final long T0 = 1500000000000L;
+  private static final int RANDOM_TEARS = 200;
+
+  private static int restores;
+
+  public static void main(String[] args) throws IOException {
+    Path file = Files.createTempFile("timer", ".state");
+    try {
+      catchUp(file);
+      torn(file);
+      corrupt(file);
+      restart(file);
+    } finally {
+      Files.delete(file);
+    }
+    System.out.println(restores + " restores OK");
+  }
+
+  private static void catchUp(Path file) throws IOException {
+    Files.write(file, new byte[0]);
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      expect("empty file", checkpoint, T0, false, 0, false);
+      checkpoint.save(1000, false, T0);
+    }
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      expect("10s later", checkpoint, T0 + 10000, true, 1000 - 80, false);
+      expect("an hour later", checkpoint, T0 + 3600000, true, 1000 - 28800, false);
+      expect("clock went back", checkpoint, T0 - 5000, true, 1000, false);
+      checkpoint.save(500, true, T0);
+    }
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      expect("paused, an hour later", checkpoint, T0 + 3600000, true, 500, true);
+    }
+  }
+
+  private static void torn(Path file) throws IOException {
+    Random random = new Random(42);
+    Files.write(file, new byte[0]);
+    long last = 0;
+    for (int save = 0; save < 20; save++) {
+      byte[] old = Files.readAllBytes(file);
+      long next = random.nextLong() >> 8;
+      try (Checkpoint checkpoint = new Checkpoint(file)) {
+        checkpoint.save(next, false, T0);
+      }
+      byte[] saved = Files.readAllBytes(file);
+      // The save only touches one slot (a new file is all zeroes to start)
+      byte[] padded = Arrays.copyOf(old, saved.length);
+      int from = -1;
+      int to = 0;
+      for (int i = Checkpoint.HEADER; i < saved.length; i++) {
+        if (padded[i] != saved[i]) {
+          from = from < 0 ? i : from;
+          to = i + 1;
+        }
+      }
+      if (from < Checkpoint.HEADER || to - from > Checkpoint.SLOT) {
+        fail("save " + save + " wrote bytes " + from + " to " + to);
+      }
+      from = (from - Checkpoint.HEADER) / Checkpoint.SLOT * Checkpoint.SLOT + Checkpoint.HEADER;
+      for (int prefix = 0; prefix < Checkpoint.SLOT; prefix++) {
+        tear(file, old, saved, from, mask(prefix), next, last, save > 0, "save " + save + " prefix " + prefix);
+      }
+      for (int words = 0; words < 15; words++) {
+        long mask = 0;
+        for (int word = 0; word < 4; word++) {
+          if ((words & 1 << word) != 0) {
+            mask |= 0xFFL << word * 8;
+          }
+        }
+        tear(file, old, saved, from, mask, next, last, save > 0, "save " + save + " words " + words);
+      }
+      for (int i = 0; i < RANDOM_TEARS; i++) {
+        long mask = random.nextLong() & 0xFFFFFFFFL;
+        if (mask != 0xFFFFFFFFL) {
+          tear(file, old, saved, from, mask, next, last, save > 0, "save " + save + " bytes " + Long.toHexString(mask));
+        }
+      }
+      Files.write(file, saved);
+      try (Checkpoint checkpoint = new Checkpoint(file)) {
+        expect("save " + save + " complete", checkpoint, T0, true, next, false);
+      }
+      last = next;
+    }
+  }
+
+  // Bit i set if byte i of the slot made it to the file
+  private static long mask(int prefix) {
+    return (1L << prefix) - 1;
+  }
+
+  // Expects the new save if every byte it changed made it, otherwise the
+  // previous one
+  private static void tear(Path file, byte[] old, byte[] saved, int slot, long mask, long next, long previous,
+      boolean previousValid, String what) throws IOException {
+    byte[] mixed = Arrays.copyOf(old, saved.length);
+    if (old.length < Checkpoint.HEADER) {
+      // a new file gets its header before the first save
+      System.arraycopy(saved, 0, mixed, 0, Checkpoint.HEADER);
+    }
+    for (int i = 0; i < Checkpoint.SLOT; i++) {
+      if ((mask & 1L << i) != 0) {
+        mixed[slot + i] = saved[slot + i];
+      }
+    }
+    Files.write(file, mixed);
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      if (Arrays.equals(mixed, saved)) {
+        expect(what, checkpoint, T0, true, next, false);
+      } else {
+        expect(what, checkpoint, T0, previousValid, previous, false);
+      }
+    }
+  }
+
+  private static void corrupt(Path file) throws IOException {
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      checkpoint.save(100, false, T0);
+      checkpoint.save(99, false, T0);
+    }
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[Checkpoint.HEADER + 9] ^= 1;
+    bytes[Checkpoint.HEADER + Checkpoint.SLOT + 9] ^= 1;
+    Files.write(file, bytes);
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      expect("both slots corrupt", checkpoint, T0, false, 0, false);
+    }
+    Files.write(file, new byte[Checkpoint.SIZE]);
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      expect("zeroed file", checkpoint, T0, false, 0, false);
+    }
+  }
+
+  // A running countdown saving on every render, restarted part way
+  private static void restart(Path file) throws IOException {
+    Files.write(file, new byte[0]);
+    long counter;
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      SimulatedBoard board = new SimulatedBoard(new TimerState(0x3FFF << 3), 125, TimeUnit.MILLISECONDS);
+      board.setRecording(false);
+      board.getLoop().setCheckpoint(checkpoint);
+      board.press(TimerState.GREEN, 0, 20, TimeUnit.MILLISECONDS);
+      board.runUntil(TimeUnit.SECONDS.toNanos(10));
+      counter = board.getLoop().getState().getCounter();
+    }
+    try (Checkpoint checkpoint = new Checkpoint(file)) {
+      TimerState state = new TimerState(0x3FFF << 3);
+      // no (wall clock) time has passed
+      checkpoint.restore(state, 1, TimeUnit.DAYS);
+      if (state.getCounter() != counter || state.isPaused()) {
+        fail("restart restored " + state.getCounter() + (state.isPaused() ? " paused" : "") + ", expected " + counter);
+      }
+      restores++;
+    }
+  }
+
+  private static void expect(String what, Checkpoint checkpoint, long millis, boolean valid, long counter,
+      boolean paused) {
+    TimerState state = new TimerState(-1);
+    boolean restored = checkpoint.restore(state, 125, TimeUnit.MILLISECONDS, millis);
+    if (restored != valid || valid && (state.getCounter() != counter || state.isPaused() != paused)
+        || !valid && (state.getCounter() != -1 || !state.isPaused())) {
+      fail(what + ": restored " + restored + " " + state.getCounter() + (state.isPaused() ? " paused" : "")
+          + ", expected " + valid + " " + counter + (paused ? " paused" : ""));
+    }
+    restores++;
+  }
+
+  private static void fail(String message) {
+    System.out.println("FAILED: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,92 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the counting mode (TimerLoop.setHandoff plus a RenderStage):
+ * - in simulated time, that the LEDs show the remaining time to the
+ * microsecond at any moment, not just on ticks
+ * - in real time, with LEDs that take 1ms per frame (about what 17 sysfs
+ * writes cost), that the 125us clock keeps its ticks when the LEDs are
+ * rendered on their own thread, where it can't when the loop draws them
+ *
+ * Exits with status 1 if a frame is wrong.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class CountingModeCheck {
+
+  private static final long PERIOD = 125000;
+  private static final long SLOW_LEDS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long SECONDS = 3;
+
+  private static long now = 1000;
+
+  public static void main(String[] args) throws InterruptedException {
+    checkResolution();
+    MemoryPins pins = new MemoryPins();
+    LedBank slow = frame -> {
+      SpinWait.until(System.nanoTime() + SLOW_LEDS, TimeSource.SYSTEM);
+      pins.setValue(frame);
+    };
+
+    TimerLoop coupled = new TimerLoop(new TimerState(Integer.MAX_VALUE), slow, PERIOD, TimeUnit.NANOSECONDS, () -> {});
+    run(coupled, null);
+    report("coupled", coupled, coupled.getMetrics().getRenderTime().getCount());
+
+    TimerLoop counting = new TimerLoop(new TimerState(Integer.MAX_VALUE), null, PERIOD, TimeUnit.NANOSECONDS, () -> {});
+    LatestValue handoff = new LatestValue(0);
+    counting.setHandoff(handoff);
+    RenderStage render = new RenderStage(handoff, slow, 1, 1, TimeUnit.MILLISECONDS);
+    run(counting, render);
+    report("counting", counting, render.getRenderTime().getCount());
+  }
+
+  private static void checkResolution() {
+    TimeSource time = () -> now;
+    TimerLoop loop = new TimerLoop(new TimerState(8 << 3), null, PERIOD, TimeUnit.NANOSECONDS, () -> {}, time);
+    LatestValue handoff = new LatestValue(0);
+    loop.setHandoff(handoff);
+    MemoryPins pins = new MemoryPins();
+    RenderStage render = new RenderStage(handoff, new PortLeds(32, pins), 1, 1, TimeUnit.MICROSECONDS, time);
+    loop.start();
+    loop.submit(TimerState.GREEN, true);
+    loop.step(); // starts the clock
+    long start = now;
+    long total = (8 << 3) * PERIOD;
+    for (long t = 0; t < total; t += 7919) { // a prime, so samples land all over each tick
+      now = start + t;
+      loop.step();
+      render.render(now);
+      long expected = (total - t) / 1000;
+      if (pins.getState() != expected) {
+        System.out.printf("FAILED: showed %dus at %dns, expected %dus%n", pins.getState(), t, expected);
+        System.exit(1);
+      }
+    }
+    System.out.println("resolution: every sample showed the remaining time to the microsecond");
+  }
+
+  private static void run(TimerLoop loop, RenderStage render) throws InterruptedException {
+    Thread renderThread = render == null ? null : new Thread(render, "Render");
+    Thread loopThread = new Thread(loop, "TimerLoop");
+    loop.submit(TimerState.GREEN, true);
+    loopThread.start();
+    if (renderThread != null) {
+      renderThread.start();
+    }
+    Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+    loop.stop();
+    loopThread.join();
+    if (renderThread != null) {
+      render.stop();
+      renderThread.join();
+    }
+  }
+
+  private static void report(String name, TimerLoop loop, long frames) {
+    ClockEngine clock = loop.getClock();
+    System.out.printf("%-8s frames=%d missed ticks=%d late=%d tick jitter p99=%dus%n", name, frames,
+        clock.getMissedTicks(), clock.getLateTicks(), loop.getMetrics().getTickJitterP99Micros());
+  }
+}
@@ -0,0 +1,81 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hammers a TimerLoop (millisecond timer settings, in-memory LEDs) with
+ * button events from several threads at once, and checks that:
+ * - every Green press is applied exactly once (the timer has to end up
+ * running or paused depending on whether the number of toggles is odd)
+ * - the clock keeps its 125us ticks while the burst is going on
+ *
+ * Exits with status 1 if an edit was lost.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class EventLoopStress {
+
+  private static final int PRODUCERS = 3;
+  private static final int PRESSES = 33333;
+  private static final long QUIET_MS = 2000;
+
+  public static void main(String[] args) throws InterruptedException {
+    TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), new FrameRenderer(17, new MemoryPins()),
+        125000, TimeUnit.NANOSECONDS, () -> {});
+    Thread owner = new Thread(loop, "TimerLoop");
+    owner.start();
+
+    // Baseline: let the clock run with no button traffic
+    loop.submit(TimerState.GREEN, true);
+    loop.submit(TimerState.GREEN, false);
+    Thread.sleep(QUIET_MS);
+    ClockEngine clock = loop.getClock();
+    long missed = clock.getMissedTicks();
+    long late = clock.getLateTicks();
+    System.out.printf("quiet: missed=%d late=%d maxLateness=%dus%n",
+        missed, late, clock.getMaxLatenessNanos() / 1000);
+
+    Thread[] producers = new Thread[PRODUCERS];
+    long start = System.nanoTime();
+    for (int p = 0; p < PRODUCERS; p++) {
+      producers[p] = new Thread(() -> {
+        for (int i = 0; i < PRESSES; i++) {
+          send(loop, TimerState.GREEN, true);
+          send(loop, TimerState.GREEN, false);
+        }
+      }, "Producer " + p);
+      producers[p].start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    long expected = 2L * PRODUCERS * PRESSES + 2;
+    while (loop.getApplied() < expected) {
+      Thread.yield();
+    }
+    long burst = System.nanoTime() - start;
+    System.out.printf("burst: %d events in %dms, missed=%d late=%d maxLateness=%dus%n",
+        expected - 2, burst / 1000000, clock.getMissedTicks() - missed, clock.getLateTicks() - late,
+        clock.getMaxLatenessNanos() / 1000);
+    // The state belongs to the loop thread, so stop it before looking
+    loop.stop();
+    owner.join();
+    boolean running = !loop.getState().isPaused();
+    boolean expectRunning = (1 + PRODUCERS * PRESSES) % 2 == 1;
+    System.out.printf("applied=%d expected=%d running=%b%n", loop.getApplied(), expected, running);
+    TimerMetrics metrics = loop.getMetrics();
+    System.out.printf("tick jitter p99=%dus, render p99=%dus, green press-to-render p99=%dus%n",
+        metrics.getTickJitterP99Micros(), metrics.getRenderTimeP99Micros(),
+        metrics.getButtonLatencyP99Micros()[TimerState.GREEN]);
+    if (loop.getApplied() != expected || running != expectRunning) {
+      System.out.println("FAILED: lost or duplicated edits");
+      System.exit(1);
+    }
+  }
+
+  private static void send(TimerLoop loop, int button, boolean pressed) {
+    while (!loop.submit(button, pressed)) {
+      Thread.yield(); // queue full, the loop thread will catch up
+    }
+  }
+}
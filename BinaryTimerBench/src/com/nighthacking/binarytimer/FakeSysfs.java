@@ -0,0 +1,53 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Stand-in for /sys/class/gpio in a temp directory, with the export and
+ * unexport files and a gpioN directory (direction, value) for each pin.
+ * Good enough to measure the Java side of sysfs writes on a CI machine.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FakeSysfs implements Closeable {
+
+  private final Path root;
+
+  public FakeSysfs(int... pins) throws IOException {
+    root = Files.createTempDirectory("sysfs-gpio");
+    Files.createFile(root.resolve("export"));
+    Files.createFile(root.resolve("unexport"));
+    for (int pin : pins) {
+      Path dir = Files.createDirectory(root.resolve("gpio" + pin));
+      Files.write(dir.resolve("direction"), "in\n".getBytes());
+      Files.write(dir.resolve("value"), "0\n".getBytes());
+    }
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  @Override
+  public void close() throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
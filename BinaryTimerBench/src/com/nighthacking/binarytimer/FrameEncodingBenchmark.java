@@ -0,0 +1,66 @@
+package com.nighthacking.binarytimer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Turns the counter into what each backend needs to write, without touching
+ * any pins: one value per pin (the original updateLeds loop), the changed
+ * pins only (FrameRenderer), or SET/CLR masks (GpioRegisterLeds).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FrameEncodingBenchmark {
+
+  private GpioRegisterLeds registers;
+  private int counter;
+  private int last;
+
+  @Setup
+  public void setup() {
+    registers = new GpioRegisterLeds(ByteBuffer.allocateDirect(GpioRegisterLeds.BLOCK_SIZE), BenchBackend.GPIO_PINS);
+    counter = 0x1FFFF;
+  }
+
+  @Benchmark
+  public void perPin(Blackhole bh) {
+    int frame = counter--;
+    for (int i = 0; i < 17; i++) {
+      bh.consume((frame >> i & 0x1) != 0);
+    }
+  }
+
+  @Benchmark
+  public void changedPins(Blackhole bh) {
+    int frame = counter-- & 0x1FFFF;
+    int changed = frame ^ last;
+    while (changed != 0) {
+      int bit = Integer.numberOfTrailingZeros(changed);
+      bh.consume((frame >> bit & 0x1) != 0);
+      changed &= changed - 1;
+    }
+    last = frame;
+  }
+
+  @Benchmark
+  public int setMask() {
+    return registers.setMask(counter--);
+  }
+}
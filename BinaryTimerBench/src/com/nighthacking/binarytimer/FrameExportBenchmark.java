@@ -0,0 +1,104 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FrameExport publish() and Reader.read() on their own, then one writer
+ * publishing flat out against readers polling flat out (a much harder
+ * contention than a timer publishing at most every 125us). Change the number
+ * of readers with -tg 1,N; publish should stay about the same however many
+ * there are, since readers never write to the shared cache line, while each
+ * read slows down as more of them find the writer part way through a frame.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FrameExportBenchmark {
+
+  private Path path;
+  private FrameExport export;
+  private long counter;
+
+  /**
+   * Each reading thread maps the file for itself, like a separate process.
+   */
+  @State(Scope.Thread)
+  public static class ReaderState {
+
+    private FrameExport.Reader reader;
+
+    @Setup
+    public void open(FrameExportBenchmark benchmark) throws IOException {
+      reader = new FrameExport.Reader(benchmark.path);
+    }
+
+    @TearDown
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  @Setup
+  public void open() throws IOException {
+    path = Files.createTempFile("bench", ".frame");
+    export = new FrameExport(path);
+    export.publish(0, false);
+  }
+
+  @TearDown
+  public void close() throws IOException {
+    export.close();
+    Files.delete(path);
+  }
+
+  @Benchmark
+  @Group("publish")
+  public long publishAlone() {
+    export.publish(++counter, false);
+    return counter;
+  }
+
+  @Benchmark
+  @Group("read")
+  public long readAlone(ReaderState state) {
+    state.reader.read();
+    return state.reader.getCounter();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public long publish() {
+    export.publish(++counter, false);
+    return counter;
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(4)
+  public long read(ReaderState state) {
+    state.reader.read();
+    return state.reader.getCounter();
+  }
+}
@@ -0,0 +1,218 @@
+package com.nighthacking.binarytimer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Contention test for FrameExport: one writer publishing a frame every
+ * 125us (the millisecond timers' tick) while more and more readers poll the
+ * file flat out, first as threads and then as separate JVMs the way a
+ * dashboard or logger would. Every frame the writer publishes ties its
+ * fields to its sequence number, so a reader can tell if it ever got half of
+ * one frame and half of another.
+ *
+ * For each row, prints how long publish() took, how many reads the readers
+ * managed, how often a read had to retry, and how old the frame was when it
+ * was read (for the worst reader). On a single core those are mostly down
+ * to the scheduler; the readers are spinning, so the writer only runs when
+ * it gets a turn.
+ *
+ * Exits with status 1 if any reader saw a torn frame, saw the sequence go
+ * back, or didn't get to the last frame.
+ *
+ * Usage: FrameExportCheck [readers ...]
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FrameExportCheck {
+
+  private static final long PERIOD = TimeUnit.MICROSECONDS.toNanos(125);
+  private static final long DURATION = TimeUnit.SECONDS.toNanos(2);
+  private static final long FRAMES = DURATION / PERIOD;
+  // how long past the writer a reader waits for the last frame
+  private static final long GRACE = TimeUnit.SECONDS.toNanos(10);
+  private static final int PROCESSES = 4;
+
+  private static boolean failed;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length == 3 && args[0].equals("read")) {
+      // one of the reader processes
+      Result result = new Result();
+      read(Paths.get(args[1]), result, Long.parseLong(args[2]));
+      System.out.println(result.reads + " " + result.retries + " " + result.torn + " " + result.last + " "
+          + result.age.getPercentile(50) + " " + result.age.getPercentile(99));
+      return;
+    }
+    int[] readers = {0, 1, 4, 16, 64};
+    if (args.length > 0) {
+      readers = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        readers[i] = Integer.parseInt(args[i]);
+      }
+    }
+    Path path = Files.createTempFile("timer", ".frame");
+    try {
+      System.out.printf("%-12s %16s %11s %9s %16s %s%n", "readers", "publish p50/p99", "reads/s", "retries",
+          "age p50/p99", "");
+      for (int count : readers) {
+        threads(path, count);
+      }
+      processes(path, PROCESSES);
+    } finally {
+      Files.delete(path);
+    }
+    if (failed) {
+      System.out.println("FAILED: torn or stale frames");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * What one reader saw.
+   */
+  private static class Result {
+
+    long reads;
+    long retries;
+    long torn;
+    long last;
+    long ageP50;
+    long ageP99;
+    final LogLinearHistogram age = new LogLinearHistogram();
+  }
+
+  private static void threads(Path path, int count) throws IOException, InterruptedException {
+    FrameExport export = new FrameExport(path);
+    long last = export.getSequence() + FRAMES;
+    Result[] results = new Result[count];
+    Thread[] threads = new Thread[count];
+    for (int i = 0; i < count; i++) {
+      Result result = results[i] = new Result();
+      threads[i] = new Thread(() -> {
+        try {
+          read(path, result, last);
+        } catch (IOException ex) {
+          throw new RuntimeException(ex);
+        }
+      }, "Reader " + i);
+      threads[i].start();
+    }
+    LogLinearHistogram publish = write(export);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    report(count + " threads", export, publish, results);
+    export.close();
+  }
+
+  private static void processes(Path path, int count) throws IOException, InterruptedException {
+    FrameExport export = new FrameExport(path);
+    // one frame to start with, then the timed ones
+    long last = export.getSequence() + 1 + FRAMES;
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    Process[] processes = new Process[count];
+    for (int i = 0; i < count; i++) {
+      processes[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+          FrameExportCheck.class.getName(), "read", path.toString(), Long.toString(last))
+          .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+    // give them time to start up and find the first frame
+    publish(export);
+    Thread.sleep(1000);
+    LogLinearHistogram publish = write(export);
+    Result[] results = new Result[count];
+    for (int i = 0; i < count; i++) {
+      try (BufferedReader out = new BufferedReader(new InputStreamReader(processes[i].getInputStream()))) {
+        String[] line = out.readLine().split(" ");
+        results[i] = new Result();
+        results[i].reads = Long.parseLong(line[0]);
+        results[i].retries = Long.parseLong(line[1]);
+        results[i].torn = Long.parseLong(line[2]);
+        results[i].last = Long.parseLong(line[3]);
+        results[i].ageP50 = Long.parseLong(line[4]);
+        results[i].ageP99 = Long.parseLong(line[5]);
+      }
+      processes[i].waitFor();
+    }
+    report(count + " processes", export, publish, results);
+    export.close();
+  }
+
+  // Publishes FRAMES frames, each one a function of its sequence number
+  private static LogLinearHistogram write(FrameExport export) {
+    LogLinearHistogram publish = new LogLinearHistogram();
+    long next = System.nanoTime();
+    for (int frame = 0; frame < FRAMES; frame++, next += PERIOD) {
+      for (long wait = next - System.nanoTime(); wait > 0; wait = next - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      long before = System.nanoTime();
+      publish(export);
+      publish.record(System.nanoTime() - before);
+    }
+    return publish;
+  }
+
+  private static void publish(FrameExport export) {
+    long sequence = export.getSequence() + 1;
+    export.publish(-3 * sequence, (sequence & 1) != 0, sequence * 7, System.nanoTime());
+  }
+
+  // Polls until it reads the last frame (or gives up waiting for it),
+  // checking every frame
+  private static void read(Path path, Result result, long last) throws IOException {
+    long deadline = System.nanoTime() + DURATION + GRACE;
+    try (FrameExport.Reader reader = new FrameExport.Reader(path)) {
+      long sequence = Long.MIN_VALUE;
+      while (sequence < last && System.nanoTime() - deadline < 0) {
+        if (!reader.read()) {
+          continue; // no frame yet, or the writer was switched out mid frame
+        }
+        result.reads++;
+        long read = reader.getSequence();
+        if (read < sequence || reader.getCounter() != -3 * read || reader.isPaused() != ((read & 1) != 0)
+            || reader.getMillis() != read * 7) {
+          result.torn++;
+        }
+        if (read != sequence) {
+          result.age.record(System.nanoTime() - reader.getNanos());
+        }
+        sequence = read;
+      }
+      result.retries = reader.getRetries();
+      result.last = reader.getSequence();
+      result.ageP50 = result.age.getPercentile(50);
+      result.ageP99 = result.age.getPercentile(99);
+    }
+  }
+
+  private static void report(String what, FrameExport export, LogLinearHistogram publish, Result[] results) {
+    long reads = 0;
+    long retries = 0;
+    long torn = 0;
+    long stale = 0;
+    long ageP50 = 0;
+    long ageP99 = 0;
+    for (Result result : results) {
+      reads += result.reads;
+      retries += result.retries;
+      torn += result.torn;
+      stale += result.last == export.getSequence() ? 0 : 1;
+      ageP50 = Math.max(ageP50, result.ageP50);
+      ageP99 = Math.max(ageP99, result.ageP99);
+    }
+    boolean ok = torn == 0 && stale == 0;
+    failed |= !ok;
+    System.out.printf("%-12s %7dns/%6dns %11d %9d %7dus/%6dus %s%n", what, publish.getPercentile(50),
+        publish.getPercentile(99), reads * TimeUnit.SECONDS.toNanos(1) / DURATION, retries,
+        ageP50 / 1000, ageP99 / 1000,
+        ok ? "OK" : torn + " torn, " + stale + " readers not on the last frame");
+  }
+}
@@ -0,0 +1,65 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Commits whole 17-LED frames: countdown is the normal case (a couple of
+ * bits change per frame), flip is the worst case where every LED changes
+ * (e.g. the expiry blink).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FrameRenderBenchmark {
+
+  @Param({"memory", "register", "sysfs"})
+  public String backend;
+
+  @Param({""})
+  public String sysfsRoot;
+
+  private BenchBackend backendLeds;
+  private LedBank leds;
+  private int counter;
+
+  @Setup
+  public void open() throws IOException {
+    backendLeds = BenchBackend.open(backend, sysfsRoot);
+    leds = backendLeds.getLeds();
+    counter = 0x1FFFF;
+  }
+
+  @TearDown
+  public void close() throws IOException {
+    backendLeds.close();
+  }
+
+  @Benchmark
+  public void countdown() throws IOException {
+    leds.show(counter--);
+  }
+
+  @Benchmark
+  public void flip() throws IOException {
+    counter = ~counter;
+    leds.show(counter);
+  }
+}
@@ -0,0 +1,57 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raises and lowers a single LED pin, which is what the old TimerDio,
+ * TimerPi4J, TimerPi4JRaw and TimerPi4JRawSysfs loops measured.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PinToggleBenchmark {
+
+  @Param({"memory", "register", "sysfs"})
+  public String backend;
+
+  @Param({""})
+  public String sysfsRoot;
+
+  private BenchBackend leds;
+  private FrameRenderer.PinWriter pin;
+
+  @Setup
+  public void open() throws IOException {
+    leds = BenchBackend.open(backend, sysfsRoot);
+    pin = leds.getPin();
+  }
+
+  @TearDown
+  public void close() throws IOException {
+    leds.close();
+  }
+
+  @Benchmark
+  public void toggle() throws IOException {
+    pin.write(0, true);
+    pin.write(0, false);
+  }
+}
@@ -0,0 +1,50 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the polled button path (1ms samples, integrator threshold 5) against
+ * a BounceWaveform with 3ms of contact bounce on every edge, in simulated
+ * time, and checks that each scripted press comes out as exactly one press
+ * and one release. Exits with status 1 otherwise.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class PolledInputCheck {
+
+  private static final int PRESSES = 1000;
+
+  private static long now;
+  private static final int[] events = new int[8];
+
+  public static void main(String[] args) {
+    long ms = TimeUnit.MILLISECONDS.toNanos(1);
+    BounceWaveform waveform = new BounceWaveform(() -> now, 3, TimeUnit.MILLISECONDS, PRESSES);
+    for (int i = 0; i < PRESSES; i++) {
+      // 80ms presses every 200ms, cycling through the four buttons
+      waveform.press(i % 4, i * 200 * ms, 80, TimeUnit.MILLISECONDS);
+    }
+    IntegratingDebouncer debouncer = new IntegratingDebouncer(4, 5);
+    IntegratingDebouncer.Listener listener = (button, pressed) -> events[button * 2 + (pressed ? 1 : 0)]++;
+    int raw = 0;
+    int rawEdges = 0;
+    for (now = 0; now < (PRESSES + 1) * 200 * ms; now += ms) {
+      int sample = waveform.sample();
+      rawEdges += Integer.bitCount(sample ^ raw);
+      raw = sample;
+      debouncer.sample(sample, listener);
+    }
+    boolean ok = true;
+    for (int button = 0; button < 4; button++) {
+      int expected = PRESSES / 4;
+      System.out.printf("button %d: %d presses, %d releases (expected %d)%n",
+          button, events[button * 2 + 1], events[button * 2], expected);
+      ok &= events[button * 2 + 1] == expected && events[button * 2] == expected;
+    }
+    System.out.printf("raw edges seen: %d%n", rawEdges);
+    if (!ok) {
+      System.out.println("FAILED: bounces leaked through");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jdk.dio.gpio.GPIOPin;
+import jdk.dio.gpio.GPIOPinConfig;
+import jdk.dio.gpio.GPIOPort;
+
+/**
+ * Drives the same millisecond countdown through BinaryTimerDio's two LED
+ * paths, each over a fake DIO device that lights GPIOs by their BCM number:
+ * - pins: BinaryTimerDio.pinLeds() over the LED pins 1-17, each lighting the
+ * GPIO that dio.properties gives it
+ * - port: PortLeds over a GPIOPort with DioLedPort's pin list, where port bit
+ * i lights the GPIO of its i'th pin
+ *
+ * and checks that the same GPIOs are lit after every frame, so a pin out of
+ * order in DioLedPort (or in dio.properties) shows up here rather than as
+ * the wrong LED on the board. Also prints how many device writes each path
+ * needed. Exits with status 1 on a mismatch.
+ *
+ * Usage: PortPathCheck [path to BinaryTimerDIO's dio.properties, default
+ * -Djdk.dio.registry]
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class PortPathCheck {
+
+  private static final Pattern PIN_NUMBER = Pattern.compile("pinNumber\\s*:\\s*(\\d+)");
+
+  private static int pinLit;
+  private static int portLit;
+  private static long pinWrites;
+  private static long portWrites;
+
+  public static void main(String[] args) throws Exception {
+    String registry = args.length > 0 ? args[0] : System.getProperty("jdk.dio.registry");
+    if (registry == null) {
+      System.out.println("Usage: PortPathCheck [path to dio.properties, default -Djdk.dio.registry]");
+      System.exit(1);
+    }
+    int[] pinGpios = ledGpios(registry);
+    GPIOPin[] leds = new GPIOPin[17];
+    for (int i = 0; i < 17; i++) {
+      int gpio = pinGpios[i];
+      leds[i] = device(GPIOPin.class, "setValue", value -> {
+        pinLit = (boolean) value ? pinLit | 1 << gpio : pinLit & ~(1 << gpio);
+        pinWrites++;
+      });
+    }
+    GPIOPinConfig[] portPins = DioLedPort.config().getPinConfigs();
+    GPIOPort port = device(GPIOPort.class, "setValue", value -> {
+      portLit = 0;
+      for (int bit = 0; bit < portPins.length; bit++) {
+        if (((int) value >> bit & 1) != 0) {
+          portLit |= 1 << portPins[bit].getPinNumber();
+        }
+      }
+      portWrites++;
+    });
+
+    LedBank pins = BinaryTimerDio.pinLeds(leds);
+    LedBank ports = new PortLeds(17, value -> port.setValue(value));
+    for (int counter = 0x3FFF << 3; counter >= 0; counter--) {
+      // every frame twice, the second time as a no-op
+      for (int i = 0; i < 2; i++) {
+        pins.show(counter);
+        ports.show(counter);
+        if (pinLit != portLit) {
+          System.out.printf("FAILED: frame %x lights GPIOs %s through the pins and %s through the port%n",
+              counter, gpios(pinLit), gpios(portLit));
+          System.exit(1);
+        }
+      }
+    }
+    System.out.printf("frames=%d pin writes=%d port writes=%d%n", 2 * ((0x3FFF << 3) + 1), pinWrites, portWrites);
+  }
+
+  // BCM numbers of the LED pins 1-17
+  private static int[] ledGpios(String registry) throws IOException {
+    Properties devices = new Properties();
+    try (Reader in = Files.newBufferedReader(Paths.get(registry))) {
+      devices.load(in);
+    }
+    int[] gpios = new int[17];
+    for (int i = 0; i < 17; i++) {
+      String device = devices.getProperty(Integer.toString(i + 1));
+      Matcher matcher = PIN_NUMBER.matcher(device == null ? "" : device);
+      if (!matcher.find()) {
+        throw new IOException("No pinNumber for LED pin " + (i + 1) + " in " + registry);
+      }
+      gpios[i] = Integer.parseInt(matcher.group(1));
+    }
+    return gpios;
+  }
+
+  private static interface Write {
+    public void write(Object value);
+  }
+
+  // Just enough of a DIO device to take writes
+  private static <T> T device(Class<T> type, String setter, Write write) {
+    return type.cast(Proxy.newProxyInstance(PortPathCheck.class.getClassLoader(), new Class<?>[]{type},
+        (proxy, method, args) -> {
+          if (method.getName().equals(setter)) {
+            write.write(args[0]);
+            return null;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        }));
+  }
+
+  private static String gpios(int lit) {
+    StringBuilder list = new StringBuilder("{");
+    for (int gpio = 0; gpio < 32; gpio++) {
+      if ((lit >> gpio & 1) != 0) {
+        list.append(list.length() > 1 ? "," : "").append(gpio);
+      }
+    }
+    return list.append('}').toString();
+  }
+}
@@ -0,0 +1,50 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Drives ShiftRegisterLeds against a simulated 74HC595 chain, 32 and 64 LEDs
+ * wide, with a countdown and then random frames (every frame twice, the
+ * second time as a no-op). Checks after each frame that the outputs match,
+ * that there was exactly one latch per changed frame and no protocol
+ * violations, and prints the pin writes per frame. Exits with status 1 on a
+ * failure.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class ShiftRegisterCheck {
+
+  private static final int FRAMES = 100000;
+
+  public static void main(String[] args) throws Exception {
+    check(32);
+    check(64);
+  }
+
+  private static void check(int width) throws Exception {
+    ShiftRegisterChain chain = new ShiftRegisterChain(width / 8);
+    ShiftRegisterLeds leds = new ShiftRegisterLeds(width, chain);
+    long mask = width == 64 ? -1 : (1L << width) - 1;
+    long counter = 0x0123456789ABCDEFL;
+    long random = 0x9E3779B97F4A7C15L;
+    for (int i = 0; i < 2 * FRAMES; i++) {
+      long frame;
+      if (i < FRAMES) {
+        frame = counter--;
+      } else {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        frame = random;
+      }
+      for (int repeat = 0; repeat < 2; repeat++) {
+        leds.show(frame);
+        if (chain.getOutputs() != (frame & mask) || chain.getViolations() != 0 || chain.getLatches() != i + 1) {
+          System.out.printf("FAILED: %d LEDs, frame %x showed %x (latches=%d violations=%d)%n", width,
+              frame & mask, chain.getOutputs(), chain.getLatches(), chain.getViolations());
+          System.exit(1);
+        }
+      }
+    }
+    System.out.printf("%d LEDs: %d frames, %d latches, %.1f pin writes per frame%n", width, 4 * FRAMES,
+        chain.getLatches(), (double) chain.getWrites() / chain.getLatches());
+  }
+}
@@ -0,0 +1,162 @@
+package com.nighthacking.binarytimer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the timer on a SimulatedBoard in virtual time:
+ * - a 30 minute countdown (seconds timer settings), paused for 30 seconds
+ * along the way and left to blink at the end, checked tick by tick against
+ * a model of what the LEDs should show, with and without event driven mode
+ * - a few thousand random button scripts, checking that event driven mode
+ * shows exactly the same frames at the same times as waking every tick
+ * - red held for 3 seconds shuts the timer down, but not once its release
+ * has been dropped from a full command queue
+ *
+ * Prints how long the runs took. Exits with status 1 on any difference.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class SimulationCheck {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long TICK = TimeUnit.MILLISECONDS.toNanos(125);
+  private static final long BLINK = TimeUnit.MILLISECONDS.toNanos(250);
+  private static final long COUNTDOWN = 30 * 60 * 8; // in eighths of a second
+  private static final long START = 1 * SECOND;
+  private static final long PAUSE = 600 * SECOND;
+  private static final long RESUME = 630 * SECOND;
+  private static final long END = 1900 * SECOND;
+  private static final int SCENARIOS = 2000;
+  private static final long SCENARIO_LENGTH = 60 * SECOND;
+
+  public static void main(String[] args) {
+    boolean ok = true;
+    for (boolean event : new boolean[]{false, true}) {
+      long start = System.nanoTime();
+      SimulatedBoard board = countdown(event);
+      long elapsed = System.nanoTime() - start;
+      long bad = 0;
+      for (long t = 0; t < END; t += TICK) {
+        if (board.frameAt(t) != expected(t)) {
+          if (bad++ == 0) {
+            System.out.printf("FAILED: at %dms showed %d, expected %d%n", t / 1000000, board.frameAt(t), expected(t));
+          }
+        }
+      }
+      System.out.printf("countdown%s: %ds of timer in %dms, %d frames, %d wakeups, %d wrong%n",
+          event ? " (event driven)" : "", END / SECOND, elapsed / 1000000, board.getFrameCount(),
+          board.getLoop().getMetrics().getWakeups(), bad);
+      ok &= bad == 0;
+    }
+
+    Random random = new Random(42);
+    long start = System.nanoTime();
+    long frames = 0;
+    int differ = 0;
+    for (int i = 0; i < SCENARIOS; i++) {
+      long seed = random.nextLong();
+      SimulatedBoard ticking = scenario(seed, false);
+      SimulatedBoard eventDriven = scenario(seed, true);
+      frames += ticking.getFrameCount();
+      if (!sameFrames(ticking, eventDriven)) {
+        if (differ++ == 0) {
+          System.out.printf("FAILED: scenario with seed %d differs in event driven mode%n", seed);
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("scenarios: %d x %ds in %dms (%d frames), %d differ%n",
+        SCENARIOS, SCENARIO_LENGTH / SECOND, elapsed / 1000000, frames, differ);
+
+    for (boolean event : new boolean[]{false, true}) {
+      ok &= redHold(event);
+    }
+    if (!ok || differ > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static SimulatedBoard countdown(boolean event) {
+    SimulatedBoard board = new SimulatedBoard(new TimerState(COUNTDOWN), 125, TimeUnit.MILLISECONDS);
+    board.getLoop().setEventDriven(event);
+    board.press(TimerState.GREEN, START, 80, TimeUnit.MILLISECONDS)
+        .press(TimerState.GREEN, PAUSE, 80, TimeUnit.MILLISECONDS)
+        .press(TimerState.GREEN, RESUME, 80, TimeUnit.MILLISECONDS);
+    board.runUntil(END);
+    return board;
+  }
+
+  // What the LEDs should show at a tick, worked out from the script
+  private static long expected(long t) {
+    if (t < START) {
+      return COUNTDOWN;
+    }
+    long paused = COUNTDOWN - (PAUSE - START - 1) / TICK;
+    if (t < PAUSE) {
+      return COUNTDOWN - (t - START) / TICK;
+    } else if (t < RESUME) {
+      return paused;
+    }
+    long counter = paused - (t - RESUME) / TICK;
+    return counter <= 0 && t / BLINK % 2 == 0 ? 0 : counter;
+  }
+
+  // Random presses of random buttons, starting from a few seconds
+  private static SimulatedBoard scenario(long seed, boolean event) {
+    Random random = new Random(seed);
+    SimulatedBoard board = new SimulatedBoard(new TimerState(random.nextInt(64) << 3), 125, TimeUnit.MILLISECONDS,
+        random.nextInt((int) TimeUnit.SECONDS.toMillis(1)) * 1000000L, null);
+    board.getLoop().setEventDriven(event);
+    long at = board.nanoTime();
+    for (int presses = random.nextInt(12); presses > 0; presses--) {
+      at += random.nextInt(8000) * 1000000L;
+      // never the red button for 3 seconds, which would shut the timer down
+      board.press(random.nextInt(4), at, 20 + random.nextInt(500), TimeUnit.MILLISECONDS);
+      at += TimeUnit.MILLISECONDS.toNanos(520);
+    }
+    board.runUntil(SCENARIO_LENGTH);
+    return board;
+  }
+
+  // Red held past the 3 seconds, then red whose release the queue had no
+  // room for
+  private static boolean redHold(boolean event) {
+    SimulatedBoard held = new SimulatedBoard(new TimerState(COUNTDOWN), 125, TimeUnit.MILLISECONDS);
+    held.getLoop().setEventDriven(event);
+    held.press(TimerState.RED, START, 3500, TimeUnit.MILLISECONDS);
+    boolean heldShutdown = !held.runUntil(START + 10 * SECOND);
+
+    SimulatedBoard dropped = new SimulatedBoard(new TimerState(COUNTDOWN), 125, TimeUnit.MILLISECONDS);
+    dropped.getLoop().setEventDriven(event);
+    dropped.edge(TimerState.RED, true, START);
+    dropped.runUntil(START + SECOND);
+    // fill the command queue, so there is no room for the release
+    for (int i = 0; dropped.getLoop().submit(TimerState.GRAY, true); i++) {
+      if (i > 1000) {
+        throw new IllegalStateException("Command queue never filled");
+      }
+    }
+    boolean releaseDropped = !dropped.getLoop().submit(TimerState.RED, false);
+    boolean droppedShutdown = !dropped.runUntil(START + 10 * SECOND);
+    System.out.printf("red hold%s: held 3.5s %s, release dropped %s%n", event ? " (event driven)" : "",
+        heldShutdown ? "shut down" : "kept running", droppedShutdown ? "shut down" : "kept running");
+    if (!heldShutdown || !releaseDropped || droppedShutdown) {
+      System.out.println("FAILED: red should only shut the timer down while it is held");
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean sameFrames(SimulatedBoard a, SimulatedBoard b) {
+    if (a.getFrameCount() != b.getFrameCount()) {
+      return false;
+    }
+    for (int i = 0; i < a.getFrameCount(); i++) {
+      if (a.getFrameTime(i) != b.getFrameTime(i) || a.getFrame(i) != b.getFrame(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,68 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a millisecond timer on in-memory LEDs the same way the boards do,
+ * with 21 stand-in pins that each take 5ms to set up (about what a sysfs
+ * export costs while udev catches up) provisioned with ParallelInit.
+ * StartupTimer logs the phase breakdown when the first frame shows. Then
+ * provisions the same pins one at a time for comparison. The pins are
+ * simulated, so this only shows what overlapping the sysfs exports can save;
+ * the register setup on a real board still goes one pin at a time.
+ *
+ * Exits with status 1 if the first frame took a second or more from JVM
+ * launch.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class StartupCheck {
+
+  private static final int PINS = 21;
+  private static final long PIN_SETUP_MS = 5;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    StartupTimer startup = new StartupTimer("StartupCheck");
+    long start = System.nanoTime();
+    ParallelInit.forEach(PINS, StartupCheck::provision);
+    long parallel = System.nanoTime() - start;
+    startup.mark("provision");
+
+    CountDownLatch shown = new CountDownLatch(1);
+    LedBank leds = new FrameRenderer(17, new MemoryPins());
+    TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), startup.firstFrame(frame -> {
+      leds.show(frame);
+      shown.countDown();
+    }), 125000, TimeUnit.NANOSECONDS, () -> {});
+    startup.mark("listeners");
+    Thread clock = new Thread(loop, "Clock");
+    clock.start();
+    shown.await();
+    long sinceLaunch = ManagementFactory.getRuntimeMXBean().getUptime();
+    loop.stop();
+    clock.join();
+
+    start = System.nanoTime();
+    for (int i = 0; i < PINS; i++) {
+      provision(i);
+    }
+    long sequential = System.nanoTime() - start;
+    System.out.printf("%d pins: parallel %dms, sequential %dms; first frame within %dms of launch%n",
+        PINS, parallel / 1000000, sequential / 1000000, sinceLaunch);
+    if (sinceLaunch >= 1000) {
+      System.out.println("FAILED: first frame took a second or more");
+      System.exit(1);
+    }
+  }
+
+  private static void provision(int pin) throws IOException {
+    try {
+      Thread.sleep(PIN_SETUP_MS);
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a 125us clock three ways for the same length of time and prints how
+ * closely each one held the period:
+ * - executor: scheduleAtFixedRate, the way the timers used to tick
+ * - park: a TimerLoop that only parks between ticks
+ * - spin: a TimerLoop on a TickThread that parks until 50us before each
+ * tick and spins the rest of the way
+ *
+ * Usage: TickPeriodCheck [seconds] [cpu] [rtPriority], where the spin
+ * thread is pinned to cpu (-1 for none) and given SCHED_FIFO rtPriority (0
+ * for none).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TickPeriodCheck {
+
+  private static final long PERIOD = 125000;
+
+  public static void main(String[] args) throws InterruptedException {
+    long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+    int cpu = args.length > 1 ? Integer.parseInt(args[1]) : -1;
+    int priority = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+    ClockEngine clock = new ClockEngine(PERIOD, TimeUnit.NANOSECONDS);
+    LogLinearHistogram jitter = new LogLinearHistogram();
+    long[] last = new long[1];
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    executor.scheduleAtFixedRate(() -> {
+      long now = System.nanoTime();
+      if (last[0] != 0) {
+        jitter.record(Math.abs(now - last[0] - PERIOD));
+      }
+      last[0] = now;
+      clock.advance(0);
+    }, 0, PERIOD, TimeUnit.NANOSECONDS);
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    report("executor", jitter, clock);
+
+    TimerLoop park = new TimerLoop(new TimerState(Integer.MAX_VALUE), new FrameRenderer(17, new MemoryPins()),
+        PERIOD, TimeUnit.NANOSECONDS, () -> {});
+    run(park, new Thread(park, "Park"), seconds);
+    report("park", park.getMetrics().getTickJitter(), park.getClock());
+
+    TimerLoop spin = new TimerLoop(new TimerState(Integer.MAX_VALUE), new FrameRenderer(17, new MemoryPins()),
+        PERIOD, TimeUnit.NANOSECONDS, () -> {});
+    spin.setSpinWait(50, TimeUnit.MICROSECONDS);
+    TickThread thread = new TickThread(spin, "Spin", cpu, priority);
+    run(spin, thread, seconds);
+    report("spin" + (thread.isPinned() ? " (pinned)" : "") + (thread.isRealtime() ? " (SCHED_FIFO)" : ""),
+        spin.getMetrics().getTickJitter(), spin.getClock());
+  }
+
+  private static void run(TimerLoop loop, Thread thread, long seconds) throws InterruptedException {
+    loop.submit(TimerState.GREEN, true);
+    thread.start();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    loop.stop();
+    thread.join();
+  }
+
+  private static void report(String name, LogLinearHistogram jitter, ClockEngine clock) {
+    System.out.printf("%-10s ticks=%d jitter p50=%dus p99=%dus max=%dus missed=%d late=%d%n", name,
+        jitter.getCount() + 1, jitter.getPercentile(50) / 1000, jitter.getPercentile(99) / 1000,
+        jitter.getMax() / 1000, clock.getMissedTicks(), clock.getLateTicks());
+  }
+}
@@ -0,0 +1,68 @@
+package com.nighthacking.binarytimer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One millisecond of a TimerGroup, in simulated time, with timers running
+ * 125ms ticks started at random times. The cost per step should grow with
+ * the number of timers due in that millisecond (timers / 125) and nothing
+ * else, so divide by that to compare the sizes; paused timers add nothing.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TimerGroupBenchmark {
+
+  private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Param({"10", "100", "1000", "10000"})
+  public int timers;
+
+  @Param({"0", "10000"})
+  public int paused;
+
+  private TimerGroup group;
+  private long now;
+  private long sink;
+
+  @Setup
+  public void start() {
+    group = new TimerGroup(timers + paused, 1, TimeUnit.MILLISECONDS, () -> now);
+    LedBank leds = frame -> sink += frame;
+    for (int i = 0; i < timers + paused; i++) {
+      // long enough that none of them expire during the run
+      group.add(new TimerState(Long.MAX_VALUE >>> 4 << 3, 64), leds, 125, TimeUnit.MILLISECONDS);
+    }
+    group.start();
+    Random random = new Random(42);
+    for (int i = 0; i < timers; i++) {
+      now += random.nextInt(125000) * 1000L / timers;
+      group.submit(i, TimerState.GREEN, true);
+      group.step();
+    }
+  }
+
+  @Benchmark
+  public long step() {
+    now += MILLISECOND;
+    group.step();
+    return sink;
+  }
+}
@@ -0,0 +1,121 @@
+package com.nighthacking.binarytimer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs 10000 independent timers in one TimerGroup. First in simulated time,
+ * with periods of 10ms, 125ms and 1s, each started, paused and restarted at
+ * random times, checking every counter against what it should be at the
+ * end. Then for real on a group thread for a few seconds, printing how late
+ * the ticks were and how long each wakeup took.
+ *
+ * Exits with status 1 if any counter is off.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimerGroupCheck {
+
+  private static final int TIMERS = 10000;
+  private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long[] PERIODS = {10, 125, 1000};
+  private static final long END = 60000 * MILLISECOND;
+  private static final long REALTIME_SECONDS = 3;
+
+  private static long now;
+
+  public static void main(String[] args) throws InterruptedException {
+    simulated();
+    realtime();
+  }
+
+  private static void simulated() {
+    Random random = new Random(42);
+    TimerGroup group = new TimerGroup(TIMERS, 1, TimeUnit.MILLISECONDS, () -> now);
+    long[] period = new long[TIMERS];
+    long[] expected = new long[TIMERS];
+    long[] started = new long[TIMERS];
+    // each timer presses green three times (on the millisecond), so it runs
+    // from the first press to the second and from the third to the end
+    long[] presses = new long[TIMERS * 3];
+    for (int i = 0; i < TIMERS; i++) {
+      period[i] = PERIODS[random.nextInt(PERIODS.length)];
+      expected[i] = (long) random.nextInt(1 << 14) << 3;
+      group.add(new TimerState(expected[i]), frame -> {}, period[i], TimeUnit.MILLISECONDS);
+      long at = 0;
+      for (int p = 0; p < 3; p++) {
+        at += (1 + random.nextInt(20000)) * MILLISECOND;
+        presses[i * 3 + p] = at << 16 | i; // sorts by time
+      }
+    }
+    Arrays.sort(presses);
+    group.start();
+    long wakeups = 0;
+    long busy = 0;
+    int[] pressed = new int[TIMERS];
+    int press = 0;
+    while (now - END < 0) {
+      for (; press < presses.length && presses[press] >>> 16 == now; press++) {
+        int i = (int) (presses[press] & 0xFFFF);
+        if (pressed[i]++ % 2 == 0) {
+          started[i] = now;
+        } else {
+          expected[i] -= (now - started[i]) / (period[i] * MILLISECOND);
+        }
+        group.submit(i, TimerState.GREEN, true);
+      }
+      long start = System.nanoTime();
+      long wait = group.step();
+      busy += System.nanoTime() - start;
+      wakeups++;
+      long next = press < presses.length ? Math.min(END, presses[press] >>> 16) : END;
+      now = wait == Long.MAX_VALUE ? next : Math.min(next, now + Math.max(wait, 1));
+    }
+    group.step();
+    int wrong = 0;
+    for (int i = 0; i < TIMERS; i++) {
+      if (pressed[i] % 2 == 1) {
+        expected[i] -= (END - started[i]) / (period[i] * MILLISECOND);
+      }
+      if (group.getState(i).getCounter() != expected[i]) {
+        if (wrong++ < 10) {
+          System.out.printf("FAILED: timer %d (%dms) is at %d, expected %d%n", i, period[i],
+              group.getState(i).getCounter(), expected[i]);
+        }
+      }
+    }
+    System.out.printf("simulated %ds: %d timers, %d ticks, %d wakeups, %dns per tick, max lateness %dms%n",
+        END / TimeUnit.SECONDS.toNanos(1), TIMERS, group.getTicks(), wakeups, busy / Math.max(1, group.getTicks()),
+        group.getLateness().getMax() / MILLISECOND);
+    if (wrong > 0) {
+      System.out.println("FAILED: " + wrong + " timers are off");
+      System.exit(1);
+    }
+  }
+
+  private static void realtime() throws InterruptedException {
+    TimerGroup group = new TimerGroup(TIMERS, 1, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < TIMERS; i++) {
+      group.add(new TimerState(0x3FFF << 3), frame -> {}, 125, TimeUnit.MILLISECONDS);
+    }
+    Thread thread = new Thread(group, "TimerGroup");
+    thread.start();
+    Random random = new Random(42);
+    for (int i = 0; i < TIMERS; i++) {
+      group.submit(i, TimerState.GREEN, true);
+      if (random.nextInt(100) == 0) {
+        Thread.sleep(1); // spread the ticks out
+      }
+    }
+    Thread.sleep(TimeUnit.SECONDS.toMillis(REALTIME_SECONDS));
+    group.stop();
+    thread.join();
+    LogLinearHistogram lateness = group.getLateness();
+    LogLinearHistogram steps = group.getStepTime();
+    System.out.printf("realtime %ds: %d timers, %d ticks, lateness p50=%dus p99=%dus max=%dus, "
+        + "wakeup p50=%dus p99=%dus max=%dus, dropped %d%n", REALTIME_SECONDS, TIMERS, group.getTicks(),
+        lateness.getPercentile(50) / 1000, lateness.getPercentile(99) / 1000, lateness.getMax() / 1000,
+        steps.getPercentile(50) / 1000, steps.getPercentile(99) / 1000, steps.getMax() / 1000, group.getDropped());
+  }
+}
@@ -0,0 +1,94 @@
+package com.nighthacking.binarytimer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a scripted session (start a 3s countdown, let it expire and blink,
+ * pause, edit, start again) in simulated time, then replays the trace as
+ * fast as possible and checks that the replay renders exactly the recorded
+ * frames: once with a ring big enough for the whole session, and once with
+ * a ring that has wrapped. Also times raw recording. Exits with status 1 if
+ * a replayed frame differs.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TraceCheck {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long END = 40 * SECOND;
+  // time, button, pressed
+  private static final long[][] SCRIPT = {
+    {1 * SECOND, TimerState.GREEN, 1},
+    {1 * SECOND + SECOND / 20, TimerState.GREEN, 0},
+    {8 * SECOND + SECOND / 3, TimerState.RED, 1},
+    {8 * SECOND + SECOND / 2, TimerState.RED, 0},
+    {9 * SECOND, TimerState.BLUE, 1},
+    {9 * SECOND + SECOND / 10, TimerState.BLUE, 0},
+    {10 * SECOND, TimerState.GRAY, 1},
+    {10 * SECOND + SECOND / 10, TimerState.GRAY, 0},
+    {11 * SECOND + SECOND / 7, TimerState.GREEN, 1},
+    {11 * SECOND + SECOND / 5, TimerState.GREEN, 0}
+  };
+
+  private static long now;
+
+  public static void main(String[] args) throws Exception {
+    Path file = Files.createTempFile("binarytimer", ".trace");
+    try {
+      check(file, 1 << 16);
+      check(file, 512);
+      timeRecording(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static void check(Path file, int capacity) throws Exception {
+    now = SECOND / 3;
+    try (TraceRecorder recorder = new TraceRecorder(file, capacity)) {
+      TimerLoop loop = new TimerLoop(new TimerState(3 << 3), new FrameRenderer(17, new MemoryPins()),
+          125, TimeUnit.MILLISECONDS, () -> {}, () -> now);
+      loop.setTrace(recorder);
+      loop.start();
+      int next = 0;
+      while (now < END) {
+        long wait = loop.step();
+        long wake = wait == Long.MAX_VALUE ? END : now + Math.max(wait, 1);
+        if (next < SCRIPT.length && SCRIPT[next][0] <= wake) {
+          now = Math.max(now, SCRIPT[next][0]);
+          loop.submit((int) SCRIPT[next][1], SCRIPT[next][2] != 0);
+          next++;
+        } else {
+          now = wake;
+        }
+      }
+    }
+    TraceReader trace = new TraceReader(file);
+    TraceReplayer replayer = new TraceReplayer(trace, new FrameRenderer(17, new MemoryPins()));
+    replayer.replay(false);
+    System.out.printf("ring=%d records=%d wrapped=%b: replayed %d button edges, %d frames, %d mismatches%n",
+        capacity, trace.size(), trace.isWrapped(), replayer.getEvents(), replayer.getFrames(), replayer.getMismatches());
+    if (replayer.getMismatches() != 0 || replayer.getFrames() == 0) {
+      System.out.printf("FAILED: first mismatch %dms into the trace%n", replayer.getFirstMismatchNanos() / 1000000);
+      System.exit(1);
+    }
+  }
+
+  private static void timeRecording(Path file) throws Exception {
+    int records = 10000000;
+    try (TraceRecorder recorder = new TraceRecorder(file, 1 << 20)) {
+      for (int round = 0; round < 2; round++) { // the first round warms up
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+          recorder.tick(start + i, i);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (round == 1) {
+          System.out.printf("recording: %.1fns per record%n", (double) elapsed / records);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.nighthacking.binarytimer;
+
+import java.nio.file.Paths;
+
+/**
+ * Replays a trace from a board (see -Dbinarytimer.trace) against in-memory
+ * LEDs and reports whether the timer logic renders the same frames.
+ *
+ * Usage: TraceReplay file [realtime]
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TraceReplay {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("Usage: TraceReplay file [realtime]");
+      System.exit(2);
+    }
+    TraceReader trace = new TraceReader(Paths.get(args[0]));
+    boolean realtime = args.length > 1 && args[1].equals("realtime");
+    TraceReplayer replayer = new TraceReplayer(trace, new FrameRenderer(17, new MemoryPins()));
+    long start = System.nanoTime();
+    replayer.replay(realtime);
+    System.out.printf("%d records (%s), period %dus: replayed %d button edges in %dms%n", trace.size(),
+        trace.isWrapped() ? "wrapped" : "complete", trace.getPeriodNanos() / 1000, replayer.getEvents(),
+        (System.nanoTime() - start) / 1000000);
+    System.out.printf("%d frames compared, %d mismatches", replayer.getFrames(), replayer.getMismatches());
+    if (replayer.getFirstMismatchNanos() >= 0) {
+      System.out.printf(", first %dms into the trace", replayer.getFirstMismatchNanos() / 1000000);
+    }
+    System.out.println();
+  }
+}
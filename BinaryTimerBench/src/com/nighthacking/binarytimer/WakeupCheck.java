@@ -0,0 +1,58 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the same button script (start a 3s countdown, let it expire and
+ * blink, pause for a minute, start blinking again) through a TimerLoop with
+ * and without event driven mode, in simulated time. Checks that the LEDs go
+ * through exactly the same frames at the same times, and prints how many
+ * times each loop woke up. Exits with status 1 if the frames differ.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class WakeupCheck {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long END = 90 * SECOND;
+  // time, button, pressed
+  private static final long[][] SCRIPT = {
+    {1 * SECOND, TimerState.GREEN, 1},
+    {1 * SECOND + SECOND / 20, TimerState.GREEN, 0},
+    {12 * SECOND + SECOND / 3, TimerState.RED, 1},
+    {12 * SECOND + SECOND / 2, TimerState.RED, 0},
+    {72 * SECOND + SECOND / 7, TimerState.GREEN, 1},
+    {72 * SECOND + SECOND / 5, TimerState.GREEN, 0}
+  };
+
+  public static void main(String[] args) {
+    SimulatedBoard ticking = play(false);
+    SimulatedBoard eventDriven = play(true);
+    System.out.printf("frames=%d wakeups: every tick=%d event driven=%d (missed ticks %d/%d)%n",
+        ticking.getFrameCount(), ticking.getLoop().getMetrics().getWakeups(),
+        eventDriven.getLoop().getMetrics().getWakeups(), ticking.getLoop().getClock().getMissedTicks(),
+        eventDriven.getLoop().getClock().getMissedTicks());
+    if (ticking.getFrameCount() != eventDriven.getFrameCount()) {
+      System.out.println("FAILED: different number of frames");
+      System.exit(1);
+    }
+    for (int i = 0; i < ticking.getFrameCount(); i++) {
+      if (ticking.getFrameTime(i) != eventDriven.getFrameTime(i) || ticking.getFrame(i) != eventDriven.getFrame(i)) {
+        System.out.printf("FAILED: frame %d is %x at %dms, expected %x at %dms%n", i,
+            eventDriven.getFrame(i), eventDriven.getFrameTime(i) / 1000000,
+            ticking.getFrame(i), ticking.getFrameTime(i) / 1000000);
+        System.exit(1);
+      }
+    }
+  }
+
+  private static SimulatedBoard play(boolean event) {
+    SimulatedBoard board = new SimulatedBoard(new TimerState(3 << 3), 125, TimeUnit.MILLISECONDS, SECOND / 3, null);
+    board.getLoop().setEventDriven(event);
+    for (long[] edge : SCRIPT) {
+      board.edge((int) edge[1], edge[2] != 0, edge[0]);
+    }
+    board.runUntil(END);
+    return board;
+  }
+}
@@ -0,0 +1,180 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Software dimming by binary code modulation. Every LED gets a brightness
+ * level of a few bits, and each refresh period is split into one time slot
+ * per bit, weighted 1, 2, 4, ... In slot k the LEDs show the bit-plane of
+ * LEDs that are lit in the frame and have bit k set in their level, so each
+ * LED is on for level/(2^bits - 1) of the time. That is one frame per bit per
+ * refresh (3 for 8 levels), where per-LED PWM would need a write at every
+ * LED's own on and off edge.
+ *
+ * It is an LedBank itself: frames shown on it are handed over to the engine
+ * thread (see run()), which puts the planes on the LED bank it wraps. The
+ * plane masks for each brightness bit are worked out when the levels change,
+ * so a plane is just frame & mask.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BcmEngine implements LedBank, Runnable {
+
+  // park until this close to a slot, then spin
+  private static final long SPIN = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final LedBank leds;
+  private final int bits;
+  private final long[] slots;
+  private final long refresh;
+  private final TimeSource time;
+  private final int[] levels = new int[64];
+  private volatile long[] levelMasks;
+  private final LatestValue frame = new LatestValue(0);
+  private final LogLinearHistogram planeError = new LogLinearHistogram();
+  private volatile long refreshes;
+  private volatile long overruns;
+  private volatile long started;
+  private volatile Thread owner;
+  private volatile boolean running;
+
+  /**
+   * All LEDs start at full brightness.
+   *
+   * @param bits brightness bits per LED (levels 0 to 2^bits - 1)
+   * @param refresh time to go through all the planes once
+   */
+  public BcmEngine(LedBank leds, int bits, long refresh, TimeUnit unit) {
+    this(leds, bits, refresh, unit, TimeSource.SYSTEM);
+  }
+
+  public BcmEngine(LedBank leds, int bits, long refresh, TimeUnit unit, TimeSource time) {
+    if (bits < 1 || bits > 8) {
+      throw new IllegalArgumentException("Brightness bits must be 1-8: " + bits);
+    }
+    this.leds = leds;
+    this.bits = bits;
+    this.refresh = unit.toNanos(refresh);
+    this.time = time;
+    slots = new long[bits];
+    long weights = (1 << bits) - 1;
+    for (int k = 0; k < bits; k++) {
+      slots[k] = this.refresh * (1 << k) / weights;
+    }
+    setBrightness(-1L, (1 << bits) - 1);
+  }
+
+  /**
+   * Sets the brightness of every LED whose bit is set in leds; safe to call
+   * from any thread.
+   *
+   * @param level 0 (off) to 2^bits - 1 (fully on)
+   */
+  public synchronized void setBrightness(long leds, int level) {
+    if (level < 0 || level >= 1 << bits) {
+      throw new IllegalArgumentException("Brightness out of range: " + level);
+    }
+    long[] masks = new long[bits];
+    for (int led = 0; led < 64; led++) {
+      if ((leds >>> led & 0x1) != 0) {
+        levels[led] = level;
+      }
+      for (int k = 0; k < bits; k++) {
+        if ((levels[led] >> k & 0x1) != 0) {
+          masks[k] |= 1L << led;
+        }
+      }
+    }
+    levelMasks = masks;
+  }
+
+  @Override
+  public void show(int frame) {
+    show((long) frame);
+  }
+
+  @Override
+  public void show(long frame) {
+    this.frame.publish(frame);
+  }
+
+  /**
+   * Puts the planes on the LEDs until stop() is called. Give it a thread of
+   * its own (a pinned TickThread for short slots).
+   */
+  @Override
+  public void run() {
+    owner = Thread.currentThread();
+    running = true;
+    long deadline = time.nanoTime();
+    started = deadline;
+    while (running) {
+      long current = frame.get();
+      long[] masks = levelMasks;
+      for (int k = 0; k < bits; k++) {
+        waitUntil(deadline);
+        long now = time.nanoTime();
+        planeError.record(now - deadline);
+        try {
+          leds.show(current & masks[k]);
+        } catch (IOException | RuntimeException ex) {
+          // Pi4J reports failed writes unchecked; log it and go on to the
+          // next plane, as for an IOException
+          Logger.getLogger(BcmEngine.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        deadline += slots[k];
+      }
+      refreshes++;
+      long behind = time.nanoTime() - deadline;
+      if (behind > refresh) {
+        // Can't keep up; start the next refresh now rather than rushing
+        // through the ones that are already late
+        overruns++;
+        deadline += behind;
+      }
+    }
+  }
+
+  private void waitUntil(long deadline) {
+    long wait = deadline - time.nanoTime();
+    if (wait > SPIN) {
+      LockSupport.parkNanos(this, wait - SPIN);
+    }
+    SpinWait.until(deadline, time);
+  }
+
+  public void stop() {
+    running = false;
+    LockSupport.unpark(owner);
+  }
+
+  /**
+   * How late each plane went out, in nanoseconds.
+   */
+  public LogLinearHistogram getPlaneError() {
+    return planeError;
+  }
+
+  public long getRefreshes() {
+    return refreshes;
+  }
+
+  /**
+   * @return refreshes per second since run() started
+   */
+  public double getRefreshRate() {
+    long elapsed = time.nanoTime() - started;
+    return elapsed > 0 ? refreshes * 1e9 / elapsed : 0;
+  }
+
+  /**
+   * Refreshes that fell more than a whole period behind.
+   */
+  public long getOverruns() {
+    return overruns;
+  }
+}
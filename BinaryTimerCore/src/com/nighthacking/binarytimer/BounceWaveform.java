@@ -0,0 +1,79 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic button input for exercising debouncers without hardware. Presses
+ * are scripted up front; for a while after every press and release edge the
+ * contact reads as pseudo-random noise (like a real switch bouncing), and
+ * otherwise it reads the scripted level. The noise is a pure function of the
+ * time, so runs are repeatable.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BounceWaveform implements ButtonSampler {
+
+  private static final long NOISE_STEP = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final TimeSource time;
+  private final long bounce;
+  private final int[] buttons;
+  private final long[] pressAt;
+  private final long[] releaseAt;
+  private int presses;
+
+  /**
+   * @param bounce how long the contact chatters after each edge
+   * @param capacity maximum number of scripted presses
+   */
+  public BounceWaveform(TimeSource time, long bounce, TimeUnit unit, int capacity) {
+    this.time = time;
+    this.bounce = unit.toNanos(bounce);
+    this.buttons = new int[capacity];
+    this.pressAt = new long[capacity];
+    this.releaseAt = new long[capacity];
+  }
+
+  /**
+   * Scripts a press of the button starting at the given TimeSource time.
+   */
+  public BounceWaveform press(int button, long atNanos, long duration, TimeUnit unit) {
+    buttons[presses] = button;
+    pressAt[presses] = atNanos;
+    releaseAt[presses] = atNanos + unit.toNanos(duration);
+    presses++;
+    return this;
+  }
+
+  public int getPresses() {
+    return presses;
+  }
+
+  @Override
+  public int sample() {
+    long now = time.nanoTime();
+    int pressed = 0;
+    for (int i = 0; i < presses; i++) {
+      boolean level;
+      if (now < pressAt[i] || now >= releaseAt[i] + bounce) {
+        continue;
+      } else if (now < pressAt[i] + bounce || now >= releaseAt[i]) {
+        level = noise(now / NOISE_STEP, i);
+      } else {
+        level = true;
+      }
+      if (level) {
+        pressed |= 1 << buttons[i];
+      }
+    }
+    return pressed;
+  }
+
+  private static boolean noise(long step, int seed) {
+    long x = step * 0x9E3779B97F4A7C15L + seed;
+    x ^= x >>> 33;
+    x *= 0xFF51AFD7ED558CCDL;
+    x ^= x >>> 33;
+    return (x & 0x1) != 0;
+  }
+}
@@ -0,0 +1,322 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes a timer's counter and paused state over TCP to any number of
+ * remote displays (wall screens, phones), from one non-blocking selector
+ * thread.
+ *
+ * The timer thread calls publish() whenever it renders. That is only a store
+ * into a LatestValue, with no system call, so it never blocks and never
+ * waits on the network even with a tick every 125us. The selector thread
+ * looks for a new value every REFRESH_MS (20ms, a display refresh) rather
+ * than being woken for each one, and sends each client the change since the
+ * last value it got; with no clients it sleeps until one connects. A client
+ * that can't keep up holds at most one message in progress; anything
+ * published meanwhile is folded into the next message, so a slow client
+ * sees fewer updates rather than a growing backlog, and costs the same
+ * memory as a fast one.
+ *
+ * Protocol: the server only ever sends, and clients send nothing (anything
+ * they do send is ignored). The value is the counter shifted left one with
+ * the paused flag in bit 0, and each message is one unsigned LEB128 varint:
+ * the zigzag-encoded difference between the new value and the previous one
+ * sent on this connection (the first is relative to 0, so it is the value
+ * itself). A tick is a single byte. See Decoder.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BroadcastServer implements Runnable, Closeable {
+
+  // Longest varint for a 64-bit value
+  private static final int MAX_MESSAGE = 10;
+  // Keep the kernel from queueing up stale updates for a slow client
+  private static final int SEND_BUFFER = 4096;
+  // Room for a whole room's worth of displays connecting at once
+  private static final int BACKLOG = 1024;
+  // How often the selector thread looks for a new value
+  private static final long REFRESH_MS = 20;
+
+  /**
+   * Reads the messages on a client connection back into values.
+   */
+  public static class Decoder {
+
+    private long value;
+    private long pending;
+    private int shift;
+
+    /**
+     * Reads up to the end of the next message.
+     *
+     * @return true if a whole message was read (and getCounter/isPaused have
+     * the new value), false if the buffer ran out first
+     */
+    public boolean read(ByteBuffer in) {
+      while (in.hasRemaining()) {
+        byte b = in.get();
+        pending |= (long) (b & 0x7F) << shift;
+        shift += 7;
+        if (b >= 0) {
+          value += pending >>> 1 ^ -(pending & 1);
+          pending = 0;
+          shift = 0;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public long getCounter() {
+      return value >> 1;
+    }
+
+    public boolean isPaused() {
+      return (value & 1) != 0;
+    }
+  }
+
+  private static final class Client {
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(MAX_MESSAGE);
+    private SelectionKey key;
+    private Client prev;
+    private Client next;
+    private long sent;
+
+    private Client(SocketChannel channel) {
+      this.channel = channel;
+      out.limit(0);
+    }
+  }
+
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final LatestValue latest = new LatestValue(0);
+  private final ByteBuffer discard = ByteBuffer.allocate(256);
+  private long published;
+  private long current;
+  private Client clients;
+  private volatile int clientCount;
+  private volatile long messages;
+  private volatile long coalesced;
+  private volatile boolean running = true;
+
+  /**
+   * Opens the listening socket; run() serves it.
+   */
+  public BroadcastServer(InetSocketAddress address) throws IOException {
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    server.bind(address, BACKLOG);
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * The port it is listening on (useful when bound to port 0).
+   */
+  public int getPort() throws IOException {
+    return ((InetSocketAddress) server.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Sets the value sent to clients; never blocks. Only one thread should
+   * publish (normally the TimerLoop, see setBroadcast).
+   */
+  public void publish(long counter, boolean paused) {
+    long value = counter << 1 | (paused ? 1 : 0);
+    if (value != published) {
+      published = value;
+      latest.publish(value);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select(clients == null ? 0 : REFRESH_MS);
+        // new clients start off with the latest value
+        long value = latest.get();
+        boolean changed = value != current;
+        current = value;
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else {
+            Client client = (Client) key.attachment();
+            if (key.isReadable()) {
+              read(client);
+            }
+            if (key.isValid() && key.isWritable()) {
+              send(client);
+            }
+          }
+        }
+        if (changed) {
+          for (Client client = clients; client != null;) {
+            Client next = client.next; // send() may drop the client
+            send(client);
+            client = next;
+          }
+        }
+      }
+    } catch (IOException ex) {
+      Logger.getLogger(BroadcastServer.class.getName()).log(Level.SEVERE, null, ex);
+    } finally {
+      while (clients != null) {
+        drop(clients);
+      }
+      try {
+        server.close();
+        selector.close();
+      } catch (IOException ex) {
+        Logger.getLogger(BroadcastServer.class.getName()).log(Level.SEVERE, null, ex);
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+      Client client = new Client(channel);
+      client.key = channel.register(selector, SelectionKey.OP_READ, client);
+      client.next = clients;
+      if (clients != null) {
+        clients.prev = client;
+      }
+      clients = client;
+      clientCount++;
+      // start it off with the value itself (the difference from 0)
+      encode(client.out, current);
+      client.sent = current;
+      messages++;
+      send(client);
+    }
+  }
+
+  private void read(Client client) {
+    try {
+      int read;
+      do {
+        discard.clear();
+        read = client.channel.read(discard);
+      } while (read > 0);
+      if (read < 0) {
+        drop(client);
+      }
+    } catch (IOException ex) {
+      drop(client);
+    }
+  }
+
+  // Finishes the message in progress, then starts one with whatever the
+  // client hasn't seen yet
+  private void send(Client client) {
+    try {
+      if (client.out.hasRemaining()) {
+        client.channel.write(client.out);
+        if (client.out.hasRemaining()) {
+          coalesced++;
+          return;
+        }
+      }
+      if (client.sent != current) {
+        encode(client.out, current - client.sent);
+        client.sent = current;
+        client.channel.write(client.out);
+        messages++;
+      }
+      int ops = client.out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+      if (client.key.interestOps() != ops) {
+        client.key.interestOps(ops);
+      }
+    } catch (IOException ex) {
+      drop(client);
+    }
+  }
+
+  private static void encode(ByteBuffer out, long delta) {
+    long zigzag = delta << 1 ^ delta >> 63;
+    out.clear();
+    while ((zigzag & ~0x7FL) != 0) {
+      out.put((byte) (zigzag & 0x7F | 0x80));
+      zigzag >>>= 7;
+    }
+    out.put((byte) zigzag);
+    out.flip();
+  }
+
+  private void drop(Client client) {
+    if (!client.channel.isOpen()) {
+      return;
+    }
+    if (client.prev != null) {
+      client.prev.next = client.next;
+    } else {
+      clients = client.next;
+    }
+    if (client.next != null) {
+      client.next.prev = client.prev;
+    }
+    client.prev = null;
+    client.next = null;
+    clientCount--;
+    try {
+      client.channel.close();
+    } catch (IOException ex) {
+      Logger.getLogger(BroadcastServer.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  /**
+   * Stops the selector thread, which closes every connection on its way out.
+   */
+  @Override
+  public void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  public int getClients() {
+    return clientCount;
+  }
+
+  /**
+   * Messages sent, across all clients.
+   */
+  public long getMessages() {
+    return messages;
+  }
+
+  /**
+   * Times a client's socket was full, so that its updates were folded into
+   * the next message.
+   */
+  public long getCoalesced() {
+    return coalesced;
+  }
+}
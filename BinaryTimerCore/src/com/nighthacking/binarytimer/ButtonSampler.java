@@ -0,0 +1,18 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+
+/**
+ * Reads all the buttons at once, for polled (rather than interrupt driven)
+ * input.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public interface ButtonSampler {
+
+  /**
+   * @return the raw (undebounced) button states, bit i set if button i is
+   * currently pressed
+   */
+  public int sample() throws IOException;
+}
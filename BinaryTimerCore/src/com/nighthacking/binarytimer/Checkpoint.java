@@ -0,0 +1,144 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the timer's counter and paused flag in a small memory-mapped file,
+ * so that a restart (a crash, or holding red by accident) picks up where
+ * the timer left off instead of going back to the initial time. Saving is a
+ * handful of stores into the mapping, with no allocation and no system
+ * calls; the kernel writes the page out in its own time, and it survives
+ * the JVM dying at any point.
+ *
+ * File layout (big-endian): a 16 byte header of magic and slot size, then
+ * two 32 byte slots. Each save goes into the older slot, as a sequence
+ * number, the counter, the wall clock time in milliseconds shifted left one
+ * with the paused flag in bit 0, and a checksum of the other three. A save
+ * torn part way through fails its checksum, and restore() falls back on the
+ * other slot, which is the one saved before it.
+ *
+ * The time is wall clock rather than nanoTime since it has to mean
+ * something to the next JVM. On a board without a real time clock that
+ * relies on the clock being set (or fake-hwclock) before the timer starts;
+ * a clock that has gone backwards counts as no time passing.
+ *
+ * Single writer (the loop thread).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class Checkpoint implements Closeable {
+
+  public static final int MAGIC = 0x42544350; // BTCP
+  public static final int HEADER = 16;
+  public static final int SLOT = 32;
+  static final int SLOT_SIZE_OFFSET = 4;
+  static final int SIZE = HEADER + 2 * SLOT;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer file;
+  private long sequence;
+  private long counter;
+  private long time;
+  private boolean valid;
+
+  /**
+   * Opens (or creates) the checkpoint file and reads the last save in it.
+   */
+  public Checkpoint(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    file = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+    if (file.getInt(0) == MAGIC && file.getInt(SLOT_SIZE_OFFSET) == SLOT) {
+      read(HEADER);
+      read(HEADER + SLOT);
+    } else {
+      file.putInt(0, MAGIC);
+      file.putInt(SLOT_SIZE_OFFSET, SLOT);
+    }
+  }
+
+  // Takes the slot if it is intact and newer than what we have
+  private void read(int at) {
+    long slotSequence = file.getLong(at);
+    long slotCounter = file.getLong(at + 8);
+    long slotTime = file.getLong(at + 16);
+    if (file.getLong(at + 24) == checksum(slotSequence, slotCounter, slotTime)
+        && (!valid || slotSequence - sequence > 0)) {
+      valid = true;
+      sequence = slotSequence;
+      counter = slotCounter;
+      time = slotTime;
+    }
+  }
+
+  private static long checksum(long sequence, long counter, long time) {
+    long hash = 0x9E3779B97F4A7C15L;
+    hash = (hash ^ sequence) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ counter) * 0x94D049BB133111EBL;
+    hash = (hash ^ time) * 0xBF58476D1CE4E5B9L;
+    return hash ^ hash >>> 31;
+  }
+
+  public void save(long counter, boolean paused) {
+    save(counter, paused, System.currentTimeMillis());
+  }
+
+  /**
+   * Same as save(long, boolean), but as of the given wall clock time.
+   */
+  public void save(long counter, boolean paused, long millis) {
+    long word = millis << 1 | (paused ? 1 : 0);
+    int at = HEADER + (int) (++sequence & 1) * SLOT;
+    file.putLong(at, sequence);
+    file.putLong(at + 8, counter);
+    file.putLong(at + 16, word);
+    file.putLong(at + 24, checksum(sequence, counter, word));
+    this.counter = counter;
+    this.time = word;
+    valid = true;
+  }
+
+  /**
+   * Puts the last saved counter and paused flag into the state. A timer that
+   * was running has the ticks since then taken off, as if it had kept going.
+   *
+   * @return false if there was nothing (intact) to restore, in which case
+   * the state is left alone
+   */
+  public boolean restore(TimerState state, long period, TimeUnit unit) {
+    return restore(state, period, unit, System.currentTimeMillis());
+  }
+
+  /**
+   * Same as restore(TimerState, long, TimeUnit), but as of the given wall
+   * clock time.
+   */
+  public boolean restore(TimerState state, long period, TimeUnit unit, long millis) {
+    if (!valid) {
+      return false;
+    }
+    boolean paused = (time & 1) != 0;
+    long elapsed = Math.max(0, millis - (time >> 1));
+    state.setCounter(paused ? counter : counter - TimeUnit.MILLISECONDS.toNanos(elapsed) / unit.toNanos(period));
+    state.setPaused(paused);
+    return true;
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * Flushes the file to disk (the kernel will get round to it anyway).
+   */
+  @Override
+  public void close() throws IOException {
+    file.force();
+    channel.close();
+  }
+}
@@ -0,0 +1,140 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline-based countdown. Rather than decrementing the counter once per
+ * scheduler callback (which loses time whenever the executor falls behind),
+ * the counter is derived from how long it has been since the clock started.
+ * A late callback simply catches up, and the frames it jumped over are never
+ * rendered.
+ *
+ * Meant to be driven from a single thread; the statistics can be read from
+ * anywhere.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class ClockEngine {
+
+  private final long period;
+  private final TimeSource time;
+  private boolean running;
+  private long anchor;
+  private long anchorCounter;
+  private long lastTick;
+  private long skippedTick;
+  private long counter;
+  private volatile long missedTicks;
+  private volatile long lateTicks;
+  private volatile long maxLateness;
+
+  public ClockEngine(long period, TimeUnit unit) {
+    this(period, unit, TimeSource.SYSTEM);
+  }
+
+  public ClockEngine(long period, TimeUnit unit, TimeSource time) {
+    this.period = unit.toNanos(period);
+    this.time = time;
+  }
+
+  /**
+   * Moves the clock up to the current time, starting it from the given
+   * counter if it is not already running.
+   *
+   * @return true if there is a new frame to show, false if this callback
+   * landed on the same frame as the previous one
+   */
+  public boolean advance(long startCounter) {
+    return advance(startCounter, time.nanoTime());
+  }
+
+  /**
+   * Same as advance(long), but as of the given time rather than now.
+   */
+  public boolean advance(long startCounter, long now) {
+    if (!running) {
+      running = true;
+      anchor = now;
+      anchorCounter = startCounter;
+      lastTick = 0;
+      skippedTick = 0;
+      counter = startCounter;
+      return true;
+    }
+    // Round to the nearest tick, so callbacks that jitter either side of a
+    // deadline still count as that tick
+    long ticks = (now - anchor + period / 2) / period;
+    if (ticks <= lastTick) {
+      return false;
+    }
+    long expected = Math.max(lastTick, skippedTick) + 1;
+    if (ticks > expected) {
+      missedTicks += ticks - expected;
+    }
+    long lateness = now - (anchor + ticks * period);
+    if (lateness > period / 4) {
+      lateTicks++;
+    }
+    if (lateness > maxLateness) {
+      maxLateness = lateness;
+    }
+    lastTick = ticks;
+    counter = anchorCounter - ticks;
+    return true;
+  }
+
+  /**
+   * Tells the clock that the caller is deliberately not going to call
+   * advance() again until the given time (because the frames in between
+   * wouldn't show anything new), so the ticks it skips aren't counted as
+   * missed.
+   */
+  public void skipUntil(long deadline) {
+    if (running) {
+      skippedTick = Math.max(skippedTick, (deadline - anchor + period / 2) / period - 1);
+    }
+  }
+
+  public void stop() {
+    running = false;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public long getCounter() {
+    return counter;
+  }
+
+  /**
+   * @return the time (on the TimeSource) at which the counter reaches 0,
+   * only meaningful while running
+   */
+  public long getDeadlineNanos() {
+    return anchor + anchorCounter * period;
+  }
+
+  public long getPeriodNanos() {
+    return period;
+  }
+
+  /**
+   * Number of frames that were skipped because no callback arrived in time.
+   */
+  public long getMissedTicks() {
+    return missedTicks;
+  }
+
+  /**
+   * Number of callbacks that arrived more than a quarter period after their
+   * deadline.
+   */
+  public long getLateTicks() {
+    return lateTicks;
+  }
+
+  public long getMaxLatenessNanos() {
+    return maxLateness;
+  }
+}
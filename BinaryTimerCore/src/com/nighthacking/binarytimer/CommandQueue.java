@@ -0,0 +1,99 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free multi-producer/single-consumer queue of int commands
+ * (each with a long timestamp). Producers claim a slot with a CAS on the tail
+ * and publish it by bumping the slot's sequence number; the single consumer
+ * reads slots in order. Nothing is allocated after construction.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class CommandQueue {
+
+  public static final int EMPTY = -1;
+
+  private final int mask;
+  private final int[] commands;
+  private final long[] stamps;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private long head; // only touched by the consumer
+  private long polledStamp;
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public CommandQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+    mask = size - 1;
+    commands = new int[size];
+    stamps = new long[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds a command (which must not be negative) from any thread.
+   *
+   * @return false if the queue is full
+   */
+  public boolean offer(int command) {
+    return offer(command, 0);
+  }
+
+  /**
+   * Adds a command with a timestamp (see getPolledStamp).
+   *
+   * @return false if the queue is full
+   */
+  public boolean offer(int command, long stamp) {
+    while (true) {
+      long t = tail.get();
+      int slot = (int) t & mask;
+      long diff = sequences.get(slot) - t;
+      if (diff == 0) {
+        if (tail.compareAndSet(t, t + 1)) {
+          commands[slot] = command;
+          stamps[slot] = stamp;
+          sequences.lazySet(slot, t + 1);
+          return true;
+        }
+      } else if (diff < 0) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Takes the next command; consumer thread only.
+   *
+   * @return the command, or EMPTY
+   */
+  public int poll() {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1) {
+      return EMPTY;
+    }
+    int command = commands[slot];
+    polledStamp = stamps[slot];
+    sequences.lazySet(slot, head + mask + 1);
+    head++;
+    return command;
+  }
+
+  /**
+   * @return the timestamp of the command last returned by poll()
+   */
+  public long getPolledStamp() {
+    return polledStamp;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,262 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes every frame the timer commits into a small memory-mapped file
+ * (best kept in /dev/shm), for other processes on the same board to follow
+ * the timer without scraping the GPIO pins: a dashboard, a logger. Any
+ * number of readers (see Reader) can poll it; they only ever read the
+ * mapping, so they take no locks, make no system calls and never hold up
+ * the writer.
+ *
+ * File layout (little-endian, one 64 byte cache line):
+ * - 0: int magic "BTFX" and 4: int layout version
+ * - 8: int lock, odd while a frame is being written (or there is no frame)
+ * - 12: int flags, bit 0 paused
+ * - 16: long frame sequence number, one more for every frame published
+ * - 24: long counter
+ * - 32: long wall clock time in milliseconds
+ * - 40: long System.nanoTime() (CLOCK_MONOTONIC on Linux, so it can be
+ * compared with the reader's own)
+ *
+ * The lock is a seqlock: the writer makes it odd, writes the frame and makes
+ * it even again, with store fences in between. A reader reads the lock, the
+ * frame and the lock again (with load fences), and keeps the frame only if
+ * the lock was even and unchanged; otherwise it tries again. The lock is an
+ * int so it is read in one go on a 32-bit Pi too. Readers written in C do
+ * the same with __atomic_load_n and __atomic_thread_fence(__ATOMIC_ACQUIRE).
+ *
+ * Until the first publish, and after close, the lock is odd so that readers
+ * find no frame rather than a stale one. A new writer carries the lock and
+ * sequence number on from the file, so readers never see either go back.
+ *
+ * Single writer (the loop thread).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FrameExport implements Closeable {
+
+  public static final int MAGIC = 0x42544658; // BTFX
+  public static final int VERSION = 1;
+  public static final int SIZE = 64;
+  static final int VERSION_OFFSET = 4;
+  static final int LOCK = 8;
+  static final int FLAGS = 12;
+  static final int SEQUENCE = 16;
+  static final int COUNTER = 24;
+  static final int MILLIS = 32;
+  static final int NANOS = 40;
+  // Reads that find the writer part way through a frame before giving up
+  private static final int MAX_TRIES = 1000;
+  private static final MethodHandle LOAD_FENCE = fence("loadFence");
+  private static final MethodHandle STORE_FENCE = fence("storeFence");
+
+  private final FileChannel channel;
+  private final MappedByteBuffer file;
+  private int lock;
+  private long sequence;
+
+  /**
+   * Opens (or creates) the export file; readers will find no frame until the
+   * first publish.
+   */
+  public FrameExport(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    file = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.getInt(0) == MAGIC && file.getInt(VERSION_OFFSET) == VERSION) {
+      lock = file.getInt(LOCK) | 1;
+      sequence = file.getLong(SEQUENCE);
+      file.putInt(LOCK, lock);
+    } else {
+      lock = 1;
+      file.putInt(LOCK, lock);
+      storeFence();
+      file.putInt(0, MAGIC);
+      file.putInt(VERSION_OFFSET, VERSION);
+    }
+  }
+
+  public void publish(long counter, boolean paused) {
+    publish(counter, paused, System.currentTimeMillis(), System.nanoTime());
+  }
+
+  /**
+   * Same as publish(long, boolean), but with the given timestamps.
+   */
+  public void publish(long counter, boolean paused, long millis, long nanos) {
+    lock |= 1;
+    file.putInt(LOCK, lock);
+    storeFence();
+    file.putInt(FLAGS, paused ? 1 : 0);
+    file.putLong(SEQUENCE, ++sequence);
+    file.putLong(COUNTER, counter);
+    file.putLong(MILLIS, millis);
+    file.putLong(NANOS, nanos);
+    storeFence();
+    file.putInt(LOCK, ++lock);
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Takes the frame down (readers find none) and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    file.putInt(LOCK, lock | 1);
+    channel.close();
+  }
+
+  /**
+   * Follows a FrameExport from another thread or process. Each read() takes
+   * a consistent copy of the latest frame, which the getters return until the
+   * next one. Not thread safe; give each polling thread its own Reader.
+   */
+  public static class Reader implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer file;
+    private long sequence;
+    private long counter;
+    private boolean paused;
+    private long millis;
+    private long nanos;
+    private long retries;
+
+    /**
+     * @throws IOException if the file isn't there, or isn't a frame export
+     */
+    public Reader(Path path) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      if (channel.size() < SIZE) {
+        channel.close();
+        throw new IOException("Not a frame export: " + path);
+      }
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, SIZE);
+      file.order(ByteOrder.LITTLE_ENDIAN);
+      if (file.getInt(0) != MAGIC || file.getInt(VERSION_OFFSET) != VERSION) {
+        channel.close();
+        throw new IOException("Not a frame export: " + path);
+      }
+    }
+
+    /**
+     * Copies the latest frame out of the file. Compare getSequence() with the
+     * last one to see whether it is new.
+     *
+     * @return false if there is no frame (the timer hasn't published one, or
+     * has stopped) or the writer was part way through one for too long, in
+     * which case the getters keep the last frame read
+     */
+    public boolean read() {
+      for (int tries = 0; tries < MAX_TRIES; tries++) {
+        int before = file.getInt(LOCK);
+        loadFence();
+        if ((before & 1) == 0) {
+          int readFlags = file.getInt(FLAGS);
+          long readSequence = file.getLong(SEQUENCE);
+          long readCounter = file.getLong(COUNTER);
+          long readMillis = file.getLong(MILLIS);
+          long readNanos = file.getLong(NANOS);
+          loadFence();
+          if (file.getInt(LOCK) == before) {
+            sequence = readSequence;
+            counter = readCounter;
+            paused = (readFlags & 1) != 0;
+            millis = readMillis;
+            nanos = readNanos;
+            return true;
+          }
+        }
+        retries++;
+        if (tries > 10) {
+          // the writer has probably been switched out mid frame
+          Thread.yield();
+        }
+      }
+      return false;
+    }
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    public long getCounter() {
+      return counter;
+    }
+
+    public boolean isPaused() {
+      return paused;
+    }
+
+    /**
+     * @return wall clock time of the frame, in milliseconds
+     */
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * @return System.nanoTime() in the writer when it published the frame
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * @return how many times read() found the writer part way through a frame
+     */
+    public long getRetries() {
+      return retries;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  // Java 8 has no public way to fence plain accesses to a mapped buffer, so
+  // these are sun.misc.Unsafe's (looked up by name, as it is internal API);
+  // the JIT turns a call through a constant method handle into the fence
+  private static MethodHandle fence(String name) {
+    try {
+      Class<?> type = Class.forName("sun.misc.Unsafe");
+      Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup().findVirtual(type, name, MethodType.methodType(void.class)).bindTo(field.get(null));
+    } catch (ReflectiveOperationException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+  }
+
+  private static void loadFence() {
+    try {
+      LOAD_FENCE.invokeExact();
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static void storeFence() {
+    try {
+      STORE_FENCE.invokeExact();
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
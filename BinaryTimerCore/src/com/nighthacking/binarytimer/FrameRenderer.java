@@ -0,0 +1,56 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+
+/**
+ * LedBank for pin-at-a-time backends (DIO, Pi4J, wiringPi). Keeps the last
+ * committed frame as a shadow and only writes the pins whose bits changed,
+ * so there is no need to read the pin state back before every write.
+ *
+ * If a write fails (or the pins were touched behind our back) the shadow
+ * can't be trusted any more, and the next frame rewrites every pin.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FrameRenderer implements LedBank {
+
+  public static interface PinWriter {
+    public void write(int bit, boolean value) throws IOException;
+  }
+
+  private final PinWriter writer;
+  private final int mask;
+  private int shadow;
+  private boolean synced;
+
+  public FrameRenderer(int width, PinWriter writer) {
+    this.writer = writer;
+    this.mask = width >= 32 ? -1 : (1 << width) - 1;
+  }
+
+  @Override
+  public synchronized void show(int frame) throws IOException {
+    frame &= mask;
+    int changed = synced ? frame ^ shadow : mask;
+    synced = false; // until every write below has gone through
+    while (changed != 0) {
+      int bit = Integer.numberOfTrailingZeros(changed);
+      boolean value = (frame >> bit & 0x1) != 0;
+      writer.write(bit, value);
+      shadow ^= (shadow ^ frame) & (1 << bit);
+      changed &= changed - 1;
+    }
+    synced = true;
+  }
+
+  /**
+   * Forces the next frame to be written to every pin.
+   */
+  public synchronized void resync() {
+    synced = false;
+  }
+
+  public synchronized int getShadow() {
+    return shadow;
+  }
+}
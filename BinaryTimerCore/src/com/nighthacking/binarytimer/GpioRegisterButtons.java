@@ -0,0 +1,39 @@
+package com.nighthacking.binarytimer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ButtonSampler that reads every button with a single load of the GPLEV0
+ * register. Buttons are assumed to be wired to ground with pull-ups (low
+ * means pressed), like the rest of the timers.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class GpioRegisterButtons implements ButtonSampler {
+
+  private final ByteBuffer registers;
+  private final int[] gpioPins;
+
+  /**
+   * @param registers window onto the GPIO register block (see
+   * GpioRegisterLeds.map)
+   * @param gpioPins BCM GPIO numbers (0-31), where gpioPins[i] is button i
+   */
+  public GpioRegisterButtons(ByteBuffer registers, int... gpioPins) {
+    this.registers = registers.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    this.gpioPins = gpioPins.clone();
+  }
+
+  @Override
+  public int sample() {
+    int levels = registers.getInt(GpioRegisterLeds.GPLEV0);
+    int pressed = 0;
+    for (int i = 0; i < gpioPins.length; i++) {
+      if ((levels >> gpioPins[i] & 0x1) == 0) {
+        pressed |= 1 << i;
+      }
+    }
+    return pressed;
+  }
+}
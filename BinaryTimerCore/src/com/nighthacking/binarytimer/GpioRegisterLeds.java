@@ -0,0 +1,104 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * LedBank that writes straight into the BCM283x GPIO register block. Each
+ * frame is turned into a SET and a CLR bitmask using per-byte lookup tables
+ * built from the pin list, so the whole bank changes with one store to GPSET0
+ * followed by one store to GPCLR0 (no JNI, no partially written frames).
+ *
+ * The register window is just a ByteBuffer, so on a regular Linux box it can
+ * be a mapped temp file instead of /dev/gpiomem.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class GpioRegisterLeds implements LedBank, FrameRenderer.PinWriter {
+
+  public static final Path GPIOMEM = Paths.get("/dev/gpiomem");
+  public static final int BLOCK_SIZE = 4096;
+
+  // Register offsets from the BCM2835 ARM Peripherals datasheet, section 6.1
+  public static final int GPFSEL0 = 0x00;
+  public static final int GPSET0 = 0x1C;
+  public static final int GPCLR0 = 0x28;
+  public static final int GPLEV0 = 0x34;
+
+  private final ByteBuffer registers;
+  private final int[] gpioPins;
+  private final int[][] setTables;
+  private final int allPins;
+
+  /**
+   * @param registers window onto the GPIO register block (at least up to
+   * GPLEV0)
+   * @param gpioPins BCM GPIO numbers (0-31), where gpioPins[i] shows bit i
+   */
+  public GpioRegisterLeds(ByteBuffer registers, int... gpioPins) {
+    this.registers = registers.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    this.gpioPins = gpioPins.clone();
+    setTables = new int[(gpioPins.length + 7) / 8][256];
+    int all = 0;
+    for (int i = 0; i < gpioPins.length; i++) {
+      if (gpioPins[i] < 0 || gpioPins[i] > 31) {
+        throw new IllegalArgumentException("GPIO " + gpioPins[i] + " is not in bank 0");
+      }
+      int pinMask = 1 << gpioPins[i];
+      int[] table = setTables[i / 8];
+      for (int b = 0; b < 256; b++) {
+        if ((b >> (i % 8) & 0x1) != 0) {
+          table[b] |= pinMask;
+        }
+      }
+      all |= pinMask;
+    }
+    allPins = all;
+  }
+
+  /**
+   * Maps the GPIO register block from the given file (normally GPIOMEM).
+   */
+  public static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, BLOCK_SIZE);
+    }
+  }
+
+  /**
+   * Switches every pin in the bank to output mode (function select 001).
+   */
+  public void configureOutputs() {
+    for (int pin : gpioPins) {
+      int offset = GPFSEL0 + pin / 10 * 4;
+      int shift = pin % 10 * 3;
+      int fsel = registers.getInt(offset);
+      registers.putInt(offset, fsel & ~(0x7 << shift) | (0x1 << shift));
+    }
+  }
+
+  public int setMask(int frame) {
+    int mask = 0;
+    for (int i = 0; i < setTables.length; i++) {
+      mask |= setTables[i][frame >>> (i * 8) & 0xFF];
+    }
+    return mask;
+  }
+
+  @Override
+  public void show(int frame) {
+    int set = setMask(frame);
+    registers.putInt(GPSET0, set);
+    registers.putInt(GPCLR0, allPins & ~set);
+  }
+
+  @Override
+  public void write(int bit, boolean value) {
+    registers.putInt(value ? GPSET0 : GPCLR0, 1 << gpioPins[bit]);
+  }
+}
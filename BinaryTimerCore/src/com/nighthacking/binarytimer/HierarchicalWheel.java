@@ -0,0 +1,202 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Hierarchical timing wheel for a single thread: 6 levels of 64 slots, so
+ * deadlines up to 2^36 ticks out go straight into a slot, and entries only
+ * move down a level (at most 5 times) as their deadline gets closer.
+ * Scheduling and cancelling are O(1), and each tick only touches the entries
+ * that are due (plus one cascade every 64 ticks). Entries are intrusive and
+ * owned by the caller, so nothing is allocated after construction.
+ *
+ * Unlike TimingWheel there is no thread and no locking; whoever owns it
+ * calls advance() with the current tick.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class HierarchicalWheel {
+
+  /**
+   * Something that can be scheduled on the wheel; reschedule the same
+   * instance as often as you like.
+   */
+  public static abstract class Entry {
+
+    private Entry prev;
+    private Entry next;
+    private long deadline;
+    private int level;
+    private boolean scheduled;
+
+    /**
+     * Called from advance() on the tick the entry was scheduled for.
+     * Rescheduling from here is fine.
+     */
+    protected abstract void expire(long tick);
+
+    public boolean isScheduled() {
+      return scheduled;
+    }
+
+    public long getDeadline() {
+      return deadline;
+    }
+  }
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int LEVELS = 6;
+
+  private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+  // bit s set if slots[level][s] has anything in it
+  private final long[] occupied = new long[LEVELS];
+  private long current;
+  private int size;
+
+  public HierarchicalWheel(long start) {
+    this.current = start;
+  }
+
+  /**
+   * Schedules the entry for the given tick (or the next tick if that has
+   * already passed), replacing any earlier schedule for it.
+   */
+  public void schedule(Entry entry, long deadline) {
+    if (entry.scheduled) {
+      unlink(entry);
+    }
+    entry.deadline = Math.max(deadline, current + 1);
+    link(entry);
+    entry.scheduled = true;
+    size++;
+  }
+
+  /**
+   * @return true if the entry was still waiting to expire
+   */
+  public boolean cancel(Entry entry) {
+    if (!entry.scheduled) {
+      return false;
+    }
+    unlink(entry);
+    entry.scheduled = false;
+    size--;
+    return true;
+  }
+
+  private void link(Entry entry) {
+    long delta = entry.deadline - current;
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+      level++;
+    }
+    int slot = (int) (entry.deadline >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    Entry head = slots[level][slot];
+    entry.level = level;
+    entry.prev = null;
+    entry.next = head;
+    if (head != null) {
+      head.prev = entry;
+    }
+    slots[level][slot] = entry;
+    occupied[level] |= 1L << slot;
+  }
+
+  private void unlink(Entry entry) {
+    int slot = (int) (entry.deadline >>> (SLOT_BITS * entry.level)) & (SLOTS - 1);
+    if (entry.prev != null) {
+      entry.prev.next = entry.next;
+    } else {
+      slots[entry.level][slot] = entry.next;
+      if (entry.next == null) {
+        occupied[entry.level] &= ~(1L << slot);
+      }
+    }
+    if (entry.next != null) {
+      entry.next.prev = entry.prev;
+    }
+    entry.prev = null;
+    entry.next = null;
+  }
+
+  /**
+   * Moves the wheel up to the given tick, expiring everything due on the
+   * way in deadline order.
+   */
+  public void advance(long tick) {
+    while (current - tick < 0) {
+      if (size == 0) {
+        current = tick; // nothing to pass on the way
+        return;
+      }
+      long next = nextTick();
+      current = next - tick > 0 ? tick : next;
+      if ((current & (SLOTS - 1)) == 0) {
+        cascade();
+      }
+      expire((int) current & (SLOTS - 1));
+    }
+  }
+
+  // The next tick that has anything to do: a level 0 slot with entries in
+  // it, or the next cascade
+  private long nextTick() {
+    long base = current + 1;
+    int from = (int) base & (SLOTS - 1);
+    long ahead = Long.rotateRight(occupied[0], from);
+    long boundary = (current | (SLOTS - 1)) + 1;
+    if (ahead != 0) {
+      long tick = base + Long.numberOfTrailingZeros(ahead);
+      if (tick - boundary < 0) {
+        return tick;
+      }
+    }
+    return boundary;
+  }
+
+  // Bring the entries in the next slot of each higher level down, for as
+  // many levels as the tick has rolled over
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      int slot = (int) (current >>> (SLOT_BITS * level)) & (SLOTS - 1);
+      Entry entry = slots[level][slot];
+      slots[level][slot] = null;
+      occupied[level] &= ~(1L << slot);
+      while (entry != null) {
+        Entry next = entry.next;
+        link(entry);
+        entry = next;
+      }
+      if (slot != 0) {
+        break;
+      }
+    }
+  }
+
+  // One at a time off the head, so expire() can cancel or reschedule
+  // anything (rescheduled entries never land back in this slot)
+  private void expire(int slot) {
+    Entry entry;
+    while ((entry = slots[0][slot]) != null) {
+      unlink(entry);
+      entry.scheduled = false;
+      size--;
+      entry.expire(current);
+    }
+  }
+
+  /**
+   * @return the next tick advance() will have something to do on, or
+   * Long.MAX_VALUE if nothing is scheduled
+   */
+  public long nextDeadline() {
+    return size == 0 ? Long.MAX_VALUE : nextTick();
+  }
+
+  public long getCurrentTick() {
+    return current;
+  }
+
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,59 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Debounces polled button samples with a counting integrator per button:
+ * each sample counts up while the contact reads pressed and down while it
+ * reads released, and the button only changes state when the count hits the
+ * threshold (press) or zero (release). Bounces just wobble the count, so one
+ * press gives exactly one press event and one release event.
+ *
+ * With a 1ms sample period a threshold of 5 needs 5ms of mostly-stable
+ * contact. Allocation free; call from one thread.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class IntegratingDebouncer {
+
+  public static interface Listener {
+    public void buttonChanged(int button, boolean pressed);
+  }
+
+  private final int[] integrators;
+  private final int threshold;
+  private int state;
+
+  public IntegratingDebouncer(int buttons, int threshold) {
+    this.integrators = new int[buttons];
+    this.threshold = threshold;
+  }
+
+  /**
+   * Feeds one bulk sample (bit i set if button i reads pressed).
+   */
+  public void sample(int raw, Listener listener) {
+    for (int i = 0; i < integrators.length; i++) {
+      if ((raw >> i & 0x1) != 0) {
+        if (integrators[i] < threshold) {
+          integrators[i]++;
+        }
+      } else if (integrators[i] > 0) {
+        integrators[i]--;
+      }
+      boolean pressed = (state >> i & 0x1) != 0;
+      if (!pressed && integrators[i] == threshold) {
+        state |= 1 << i;
+        listener.buttonChanged(i, true);
+      } else if (pressed && integrators[i] == 0) {
+        state &= ~(1 << i);
+        listener.buttonChanged(i, false);
+      }
+    }
+  }
+
+  /**
+   * @return the debounced button states, bit i set if button i is pressed
+   */
+  public int getState() {
+    return state;
+  }
+}
@@ -0,0 +1,32 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-slot handoff of a long from one thread to another. The writer
+ * overwrites the slot whenever it has something new and the reader takes
+ * whatever is there when it looks, so neither side ever waits on the other.
+ * A value the reader doesn't get to in time is simply replaced by a newer
+ * one.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class LatestValue {
+
+  private final AtomicLong value;
+
+  public LatestValue(long initial) {
+    value = new AtomicLong(initial);
+  }
+
+  /**
+   * Replaces the value; never blocks.
+   */
+  public void publish(long newValue) {
+    value.lazySet(newValue);
+  }
+
+  public long get() {
+    return value.get();
+  }
+}
@@ -0,0 +1,23 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+
+/**
+ * A row of LEDs that can display one frame at a time. Bit 0 of the frame is
+ * the rightmost (least significant) LED, and bits beyond the width of the
+ * bank are ignored.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public interface LedBank {
+
+  public void show(int frame) throws IOException;
+
+  /**
+   * Shows a 64-bit frame. Banks of 32 LEDs or fewer only need show(int);
+   * wider ones (see ShiftRegisterLeds) override this as well.
+   */
+  public default void show(long frame) throws IOException {
+    show((int) frame);
+  }
+}
@@ -0,0 +1,99 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of non-negative longs (normally nanoseconds) with
+ * buckets that are linear within each power of two: 8 buckets per octave,
+ * so any value is within 12.5% of its bucket. Recording is a couple of
+ * shifts and an atomic increment, and never allocates; any thread can record
+ * while any other reads.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class LogLinearHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 40; // ~18 minutes in nanoseconds
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  // [0] = count, [1] = sum, [2] = max
+  private final AtomicLongArray totals = new AtomicLongArray(3);
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(index(value));
+    totals.incrementAndGet(0);
+    totals.addAndGet(1, value);
+    long max;
+    while (value > (max = totals.get(2)) && !totals.compareAndSet(2, max, value)) {
+      // lost a race with another recorder, try again
+    }
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return Math.min((exponent - SUB_BITS + 1) * SUB_BUCKETS + sub, BUCKETS - 1);
+  }
+
+  // Largest value that lands in the bucket
+  private static long highestValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    long sub = index % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+  }
+
+  public long getCount() {
+    return totals.get(0);
+  }
+
+  public long getMax() {
+    return totals.get(2);
+  }
+
+  public long getMean() {
+    long count = totals.get(0);
+    return count == 0 ? 0 : totals.get(1) / count;
+  }
+
+  /**
+   * @param percentile 0 to 100
+   * @return the value at or below which that percentage of recorded values
+   * fall (to within the bucket precision)
+   */
+  public long getPercentile(double percentile) {
+    long count = totals.get(0);
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return i == BUCKETS - 1 ? getMax() : Math.min(highestValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    for (int i = 0; i < 3; i++) {
+      totals.set(i, 0);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Pin (or port) backend that just remembers what was written to it, for
+ * running the timer logic (and the benchmarks) on a machine without GPIO.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class MemoryPins implements FrameRenderer.PinWriter, PortLeds.PortWriter {
+
+  private int state;
+  private long writes;
+
+  @Override
+  public void write(int bit, boolean value) {
+    state = value ? state | 1 << bit : state & ~(1 << bit);
+    writes++;
+  }
+
+  @Override
+  public void setValue(int value) {
+    state = value;
+    writes++;
+  }
+
+  public boolean get(int bit) {
+    return (state >> bit & 0x1) != 0;
+  }
+
+  public int getState() {
+    return state;
+  }
+
+  public long getWrites() {
+    return writes;
+  }
+}
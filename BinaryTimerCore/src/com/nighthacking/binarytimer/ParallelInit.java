@@ -0,0 +1,79 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs per-pin setup (sysfs exports, opening DIO devices) on several threads
+ * at once. Most of the time setting up a pin is spent waiting on sysfs and
+ * udev rather than on the CPU, so 21 pins take about as long as the slowest
+ * one instead of the sum of all of them.
+ *
+ * Only for setup that is safe to run concurrently. wiringPi's pinMode and
+ * pull-up calls and Pi4J's provisioning are not: they read, modify and write
+ * registers shared between pins, so run those one at a time.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class ParallelInit {
+
+  private static final int MAX_THREADS = 8;
+
+  public static interface PinTask {
+    public void run(int i) throws IOException;
+  }
+
+  private ParallelInit() {
+  }
+
+  /**
+   * Calls task.run(i) for i from 0 to count - 1, concurrently, and waits for
+   * all of them to finish.
+   *
+   * @throws IOException the first failure, with any others suppressed
+   */
+  public static void forEach(int count, PinTask task) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(count, MAX_THREADS)), r -> {
+      Thread thread = new Thread(r, "Init");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<Void>> results = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        int pin = i;
+        results.add(pool.submit(() -> {
+          task.run(pin);
+          return null;
+        }));
+      }
+      IOException failure = null;
+      for (Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException ex) {
+          IOException cause = ex.getCause() instanceof IOException
+              ? (IOException) ex.getCause() : new IOException(ex.getCause());
+          if (failure == null) {
+            failure = cause;
+          } else {
+            failure.addSuppressed(cause);
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while setting up pins", ex);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+
+/**
+ * LedBank for backends that can set the whole bank in one call, such as a
+ * DIO GPIOPort. Frames that don't change anything aren't written at all.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class PortLeds implements LedBank {
+
+  public static interface PortWriter {
+    public void setValue(int value) throws IOException;
+  }
+
+  private final PortWriter port;
+  private final int mask;
+  private int last;
+  private boolean synced;
+
+  public PortLeds(int width, PortWriter port) {
+    this.port = port;
+    this.mask = width >= 32 ? -1 : (1 << width) - 1;
+  }
+
+  @Override
+  public void show(int frame) throws IOException {
+    frame &= mask;
+    if (synced && frame == last) {
+      return;
+    }
+    synced = false; // until the write has gone through
+    port.setValue(frame);
+    last = frame;
+    synced = true;
+  }
+}
@@ -0,0 +1,92 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The LED half of a TimerLoop in counting mode (see TimerLoop.setHandoff).
+ * Runs on its own thread, and at every refresh it takes the latest value the
+ * loop published, works out the remaining time as of that instant, and shows
+ * it on the LEDs in units of the given resolution. The loop never waits on
+ * the LEDs, so slow GPIO writes cost frames rather than clock accuracy.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class RenderStage implements Runnable {
+
+  private static final long BLINK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+  private final LatestValue source;
+  private final LedBank leds;
+  private final long resolution;
+  private final long refresh;
+  private final TimeSource time;
+  private final LogLinearHistogram renderTime = new LogLinearHistogram();
+  private volatile Thread owner;
+  private volatile boolean running;
+
+  /**
+   * @param resolution time per count shown on the LEDs, e.g. 1us
+   * @param refresh time between frames
+   */
+  public RenderStage(LatestValue source, LedBank leds, long resolution, long refresh, TimeUnit unit) {
+    this(source, leds, resolution, refresh, unit, TimeSource.SYSTEM);
+  }
+
+  public RenderStage(LatestValue source, LedBank leds, long resolution, long refresh, TimeUnit unit, TimeSource time) {
+    this.source = source;
+    this.leds = leds;
+    this.resolution = unit.toNanos(resolution);
+    this.refresh = unit.toNanos(refresh);
+    this.time = time;
+  }
+
+  @Override
+  public void run() {
+    owner = Thread.currentThread();
+    running = true;
+    long next = time.nanoTime();
+    while (running) {
+      long now = time.nanoTime();
+      if (now - next >= 0) {
+        render(now);
+        // drop frames rather than bunching them up after a slow one
+        next += ((now - next) / refresh + 1) * refresh;
+      } else {
+        LockSupport.parkNanos(this, next - now);
+      }
+    }
+  }
+
+  /**
+   * Shows the value as of the given time.
+   */
+  public void render(long now) {
+    long value = source.get();
+    boolean counting = (value & 1) != 0;
+    long remaining = counting ? (value >> 1) - now : value >> 1;
+    long frame = Math.floorDiv(remaining, resolution);
+    if (counting && remaining <= 0 && Math.floorDiv(now, BLINK_INTERVAL) % 2 == 0) {
+      frame = 0;
+    }
+    long start = time.nanoTime();
+    try {
+      leds.show(frame);
+    } catch (IOException ex) {
+      Logger.getLogger(RenderStage.class.getName()).log(Level.SEVERE, null, ex);
+    }
+    renderTime.record(time.nanoTime() - start);
+  }
+
+  public void stop() {
+    running = false;
+    LockSupport.unpark(owner);
+  }
+
+  public LogLinearHistogram getRenderTime() {
+    return renderTime;
+  }
+}
@@ -0,0 +1,92 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Simulated chain of 74HC595 shift registers, for checking a driver such as
+ * ShiftRegisterLeds without hardware. It takes pin writes on the DATA, CLOCK
+ * and LATCH lines, shifts on each rising clock edge and copies the shift
+ * register to the outputs on each rising latch edge, like the real parts.
+ *
+ * It also counts protocol violations: changing the data line while the
+ * clock is high (the data wouldn't be stable around the next edge) and
+ * raising the latch while the clock is high.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class ShiftRegisterChain implements FrameRenderer.PinWriter {
+
+  private final long mask;
+  private boolean data;
+  private boolean clock;
+  private boolean latch;
+  private long shift;
+  private long outputs;
+  private long clocks;
+  private long latches;
+  private long writes;
+  private long violations;
+
+  /**
+   * @param chips number of 8 bit registers in the chain (up to 8)
+   */
+  public ShiftRegisterChain(int chips) {
+    this.mask = chips >= 8 ? -1 : (1L << chips * 8) - 1;
+  }
+
+  @Override
+  public void write(int bit, boolean value) {
+    writes++;
+    switch (bit) {
+      case ShiftRegisterLeds.DATA:
+        if (value != data && clock) {
+          violations++;
+        }
+        data = value;
+        break;
+      case ShiftRegisterLeds.CLOCK:
+        if (value && !clock) {
+          // QA of the first chip takes the data line, and every other stage
+          // takes the one before it (QH feeds the next chip's QA); bit i is
+          // stage i
+          shift = (shift << 1 | (data ? 1 : 0)) & mask;
+          clocks++;
+        }
+        clock = value;
+        break;
+      case ShiftRegisterLeds.LATCH:
+        if (value && !latch) {
+          if (clock) {
+            violations++;
+          }
+          outputs = shift;
+          latches++;
+        }
+        latch = value;
+        break;
+      default:
+        throw new IllegalArgumentException("Not a shift register line: " + bit);
+    }
+  }
+
+  /**
+   * @return what the LEDs show, with QA of the first chip as bit 0
+   */
+  public long getOutputs() {
+    return outputs;
+  }
+
+  public long getClocks() {
+    return clocks;
+  }
+
+  public long getLatches() {
+    return latches;
+  }
+
+  public long getWrites() {
+    return writes;
+  }
+
+  public long getViolations() {
+    return violations;
+  }
+}
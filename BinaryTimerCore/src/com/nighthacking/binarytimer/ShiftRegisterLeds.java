@@ -0,0 +1,82 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+
+/**
+ * LedBank for LEDs driven through a chain of 74HC595 shift registers, which
+ * only takes three GPIOs (data, clock and latch) however long the chain is.
+ * Each frame is clocked out most significant bit first, so LED i (counting
+ * from QA of the first chip) shows bit i, and then latched in one go, so the
+ * LEDs never show a half shifted frame.
+ *
+ * The registers in a chain can't be addressed one at a time (bits reach the
+ * far chips by passing through the near ones), so a frame is all or
+ * nothing: frames that don't change any LED aren't sent at all, and the data
+ * line is only written when the next bit differs from the one before.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class ShiftRegisterLeds implements LedBank {
+
+  public static final int DATA = 0;
+  public static final int CLOCK = 1;
+  public static final int LATCH = 2;
+
+  private final FrameRenderer.PinWriter pins;
+  private final int width;
+  private final long mask;
+  private long latched;
+  private boolean data;
+  private boolean synced;
+
+  /**
+   * @param width number of LEDs, a multiple of 8 up to 64 (8 per chip)
+   * @param pins writes DATA, CLOCK and LATCH
+   */
+  public ShiftRegisterLeds(int width, FrameRenderer.PinWriter pins) {
+    if (width <= 0 || width > 64 || width % 8 != 0) {
+      throw new IllegalArgumentException("Width must be a multiple of 8 up to 64: " + width);
+    }
+    this.pins = pins;
+    this.width = width;
+    this.mask = width == 64 ? -1 : (1L << width) - 1;
+  }
+
+  @Override
+  public void show(int frame) throws IOException {
+    show((long) frame);
+  }
+
+  @Override
+  public synchronized void show(long frame) throws IOException {
+    frame &= mask;
+    if (synced && frame == latched) {
+      return;
+    }
+    if (!synced) {
+      // First frame, or the last one failed: put every line in a known state
+      pins.write(LATCH, false);
+      pins.write(CLOCK, false);
+      pins.write(DATA, false);
+      data = false;
+    }
+    synced = false; // until the latch below has gone through
+    for (int bit = width - 1; bit >= 0; bit--) {
+      boolean value = (frame >>> bit & 0x1) != 0;
+      if (value != data) {
+        pins.write(DATA, value);
+        data = value;
+      }
+      pins.write(CLOCK, true);
+      pins.write(CLOCK, false);
+    }
+    pins.write(LATCH, true);
+    pins.write(LATCH, false);
+    latched = frame;
+    synced = true;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+}
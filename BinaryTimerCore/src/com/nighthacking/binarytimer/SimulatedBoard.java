@@ -0,0 +1,240 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer on a board that only exists in memory. The buttons follow a script,
+ * the LEDs record every frame they show and when, and the time is virtual:
+ * instead of sleeping, the board jumps straight to the next time the loop
+ * (or the script) needs to run. So a 30 minute countdown runs in
+ * milliseconds, and every run of the same script shows exactly the same
+ * frames at exactly the same times.
+ *
+ * Scripted edges go to the loop through submit(), like the GPIO listeners,
+ * or the board can be sampled instead (see pollButtons). Configure the loop
+ * itself through getLoop() before the first runUntil().
+ *
+ * Not thread safe; the loop runs on whichever thread calls runUntil().
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class SimulatedBoard implements TimeSource, ButtonSampler {
+
+  private final TimerLoop loop;
+  private final LedBank leds;
+  private long now;
+  private boolean started;
+  private boolean shutdown;
+  private boolean polled;
+  private boolean recording = true;
+  private int held;
+  private long shown;
+  // scripted edges in time order: time, then button << 1 | pressed
+  private long[] edgeTimes = new long[16];
+  private int[] edgeValues = new int[16];
+  private int edges;
+  private int nextEdge;
+  private long[] frameTimes = new long[256];
+  private long[] frames = new long[256];
+  private int frameCount;
+
+  public SimulatedBoard(TimerState state, long period, TimeUnit unit) {
+    this(state, period, unit, 0, null);
+  }
+
+  /**
+   * @param start the virtual nanoTime the board starts at
+   * @param leds where to pass the frames on to as well, or null
+   */
+  public SimulatedBoard(TimerState state, long period, TimeUnit unit, long start, LedBank leds) {
+    this.now = start;
+    this.leds = leds;
+    this.loop = new TimerLoop(state, new LedBank() {
+      @Override
+      public void show(int frame) throws IOException {
+        show((long) frame);
+      }
+
+      @Override
+      public void show(long frame) throws IOException {
+        record(frame);
+      }
+    }, period, unit, () -> shutdown = true, this);
+  }
+
+  public TimerLoop getLoop() {
+    return loop;
+  }
+
+  /**
+   * Reads the scripted buttons from the loop thread (through sample())
+   * instead of submitting each edge. Call before runUntil().
+   */
+  public void pollButtons(long period, TimeUnit unit, int threshold) {
+    polled = true;
+    loop.pollButtons(this, period, unit, threshold);
+  }
+
+  /**
+   * Whether to keep every frame for getFrame()/frameAt(); turn it off for
+   * runs with too many frames to keep. On by default.
+   */
+  public void setRecording(boolean recording) {
+    this.recording = recording;
+  }
+
+  /**
+   * Scripts a press and release of the button.
+   *
+   * @param at virtual nanoTime of the press
+   */
+  public SimulatedBoard press(int button, long at, long duration, TimeUnit unit) {
+    edge(button, true, at);
+    return edge(button, false, at + unit.toNanos(duration));
+  }
+
+  /**
+   * Scripts a single edge. Edges at the same time go in the order they
+   * were scripted, and before any tick due at that time.
+   */
+  public SimulatedBoard edge(int button, boolean pressed, long at) {
+    if (nextEdge == edges) {
+      edges = nextEdge = 0; // all played, so start again at the front
+    }
+    if (edges == edgeTimes.length) {
+      edgeTimes = Arrays.copyOf(edgeTimes, edges * 2);
+      edgeValues = Arrays.copyOf(edgeValues, edges * 2);
+    }
+    if (started && at - now < 0) {
+      throw new IllegalArgumentException("Edge at " + at + " is before the board's time " + now);
+    }
+    int i = edges++;
+    for (; i > nextEdge && edgeTimes[i - 1] - at > 0; i--) {
+      edgeTimes[i] = edgeTimes[i - 1];
+      edgeValues[i] = edgeValues[i - 1];
+    }
+    edgeTimes[i] = at;
+    edgeValues[i] = button << 1 | (pressed ? 1 : 0);
+    return this;
+  }
+
+  /**
+   * Runs the timer up to (but not including) the given virtual nanoTime, or
+   * until it is shut down.
+   *
+   * @return false if the timer has been shut down
+   */
+  public boolean runUntil(long end) {
+    if (!started) {
+      started = true;
+      loop.start();
+    }
+    while (!shutdown) {
+      while (nextEdge < edges && edgeTimes[nextEdge] - now <= 0) {
+        apply(edgeValues[nextEdge++]);
+      }
+      if (now - end >= 0) {
+        break;
+      }
+      long wait = loop.step();
+      long wake = wait == Long.MAX_VALUE ? end : now + Math.max(wait, 1);
+      if (nextEdge < edges && edgeTimes[nextEdge] - wake < 0) {
+        wake = edgeTimes[nextEdge];
+      }
+      now = end - wake < 0 ? end : wake;
+    }
+    return !shutdown;
+  }
+
+  /**
+   * Same as runUntil(long), but the given time after the current one.
+   */
+  public boolean runFor(long duration, TimeUnit unit) {
+    return runUntil(now + unit.toNanos(duration));
+  }
+
+  private void apply(int edge) {
+    int button = edge >>> 1;
+    boolean pressed = (edge & 0x1) != 0;
+    held = pressed ? held | 1 << button : held & ~(1 << button);
+    if (!polled) {
+      while (!loop.submit(button, pressed)) {
+        loop.step(); // queue full; let the loop catch up at the same time
+      }
+    }
+  }
+
+  private void record(long frame) throws IOException {
+    if (recording && (frameCount == 0 || frames[frameCount - 1] != frame)) {
+      if (frameCount == frames.length) {
+        frameTimes = Arrays.copyOf(frameTimes, frameCount * 2);
+        frames = Arrays.copyOf(frames, frameCount * 2);
+      }
+      frameTimes[frameCount] = now;
+      frames[frameCount++] = frame;
+    }
+    shown = frame;
+    if (leds != null) {
+      leds.show(frame);
+    }
+  }
+
+  @Override
+  public long nanoTime() {
+    return now;
+  }
+
+  /**
+   * @return the scripted buttons held down right now, bit i for button i
+   */
+  @Override
+  public int sample() {
+    return held;
+  }
+
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * @return the frame on the LEDs right now
+   */
+  public long getShown() {
+    return shown;
+  }
+
+  /**
+   * Number of times the LEDs changed (counting the first frame).
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  public long getFrame(int i) {
+    return frames[i];
+  }
+
+  public long getFrameTime(int i) {
+    return frameTimes[i];
+  }
+
+  /**
+   * @return what the LEDs were showing at the given virtual nanoTime
+   */
+  public long frameAt(long time) {
+    int i = Arrays.binarySearch(frameTimes, 0, frameCount, time);
+    if (i < 0) {
+      i = -i - 2;
+    } else {
+      while (i + 1 < frameCount && frameTimes[i + 1] == time) {
+        i++;
+      }
+    }
+    if (i < 0) {
+      throw new IllegalArgumentException("Nothing shown yet at " + time);
+    }
+    return frames[i];
+  }
+}
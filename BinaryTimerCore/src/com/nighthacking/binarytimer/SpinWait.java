@@ -0,0 +1,43 @@
+package com.nighthacking.binarytimer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Thread.onSpinWait() on Java 9 and later (a PAUSE/YIELD hint to the CPU),
+ * and a plain busy loop on Java 8, which doesn't have it.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class SpinWait {
+
+  private static final MethodHandle ON_SPIN_WAIT = lookup();
+
+  private static MethodHandle lookup() {
+    try {
+      return MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+    } catch (NoSuchMethodException | IllegalAccessException ex) {
+      return null; // Java 8
+    }
+  }
+
+  public static void onSpinWait() {
+    if (ON_SPIN_WAIT != null) {
+      try {
+        ON_SPIN_WAIT.invokeExact();
+      } catch (Throwable ex) {
+        throw new AssertionError(ex); // onSpinWait doesn't throw
+      }
+    }
+  }
+
+  /**
+   * Spins until the deadline has passed.
+   */
+  public static void until(long deadline, TimeSource time) {
+    while (time.nanoTime() - deadline < 0) {
+      onSpinWait();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times each phase of starting a timer, from the JVM launch up to the first
+ * frame on the LEDs, and logs the breakdown once that frame is showing. For
+ * example: "BinaryTimerPi4J startup: jvm 412ms, gpio 96ms, provision 31ms,
+ * listeners 2ms, first frame 4ms (545ms since launch)".
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class StartupTimer {
+
+  private final String name;
+  private final StringBuilder phases = new StringBuilder();
+  private final long launched;
+  private long last;
+  private volatile boolean reported;
+
+  /**
+   * Create as early as possible in main; everything before it counts as the
+   * "jvm" phase.
+   */
+  public StartupTimer(String name) {
+    this.name = name;
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    this.launched = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(uptime);
+    this.last = launched;
+    mark("jvm");
+  }
+
+  /**
+   * Ends the current phase.
+   */
+  public synchronized void mark(String phase) {
+    long now = System.nanoTime();
+    phases.append(phases.length() == 0 ? "" : ", ").append(phase).append(' ')
+        .append((now - last) / 1000000).append("ms");
+    last = now;
+  }
+
+  /**
+   * Wraps the LEDs so that the first frame shown ends the "first frame"
+   * phase and logs the breakdown.
+   */
+  public LedBank firstFrame(LedBank leds) {
+    return new LedBank() {
+      @Override
+      public void show(int frame) throws IOException {
+        leds.show(frame);
+        shown();
+      }
+
+      @Override
+      public void show(long frame) throws IOException {
+        leds.show(frame);
+        shown();
+      }
+    };
+  }
+
+  // One volatile read per frame once it has reported
+  private void shown() {
+    if (!reported) {
+      synchronized (this) {
+        if (reported) {
+          return;
+        }
+        reported = true;
+        mark("first frame");
+        Logger.getLogger(StartupTimer.class.getName()).log(Level.INFO, "{0} startup: {1} ({2}ms since launch)",
+            new Object[]{name, phases, (last - launched) / 1000000});
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * GPIO through the sysfs interface, for boards where wiringPi isn't
+ * available. Each gpioN/value file is opened once and kept open, and every
+ * write is a positional write of a preallocated "0" or "1" buffer, so
+ * toggling a pin doesn't allocate or reopen anything.
+ *
+ * Pins that were exported by this class are unexported again on close; pins
+ * that were already exported are left alone. Not thread safe (one writer).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class SysfsGpio implements FrameRenderer.PinWriter, Closeable {
+
+  public static final Path SYSFS_GPIO = Paths.get("/sys/class/gpio");
+  private static final int EXPORT_WAIT_MS = 1000;
+
+  private final Path root;
+  private final int[] pins;
+  private final FileChannel[] values;
+  private final boolean[] exported;
+  private final boolean[] output;
+  private final ByteBuffer one = ByteBuffer.allocateDirect(1).put(0, (byte) '1');
+  private final ByteBuffer zero = ByteBuffer.allocateDirect(1).put(0, (byte) '0');
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(1);
+
+  public SysfsGpio(int... pins) throws IOException {
+    this(SYSFS_GPIO, pins);
+  }
+
+  /**
+   * Exports (if needed) and opens every pin as an output.
+   *
+   * @param root usually SYSFS_GPIO, but any directory laid out the same way
+   * @param pins BCM GPIO numbers, where pins[i] is addressed as bit i
+   */
+  public SysfsGpio(Path root, int... pins) throws IOException {
+    this.root = root;
+    this.pins = pins.clone();
+    values = new FileChannel[pins.length];
+    exported = new boolean[pins.length];
+    output = new boolean[pins.length];
+    try {
+      // Export everything first and then wait for udev once, rather than
+      // waiting on each pin in turn
+      for (int i = 0; i < pins.length; i++) {
+        export(i);
+      }
+      awaitExports();
+      for (int i = 0; i < pins.length; i++) {
+        setDirection(i, true);
+        values[i] = FileChannel.open(pinDir(i).resolve("value"), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+    } catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  private Path pinDir(int bit) {
+    return root.resolve("gpio" + pins[bit]);
+  }
+
+  private void export(int bit) throws IOException {
+    Path dir = pinDir(bit);
+    if (Files.isDirectory(dir)) {
+      return; // already exported by someone else
+    }
+    writeString(root.resolve("export"), Integer.toString(pins[bit]));
+    exported[bit] = true;
+  }
+
+  // udev fixes up the permissions on the new files asynchronously
+  private void awaitExports() {
+    long deadline = System.currentTimeMillis() + EXPORT_WAIT_MS;
+    for (int i = 0; i < pins.length; i++) {
+      while (exported[i] && !Files.isWritable(pinDir(i).resolve("value")) && System.currentTimeMillis() < deadline) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Sets the pin direction, skipping the write if it is already set that way.
+   */
+  public void setDirection(int bit, boolean out) throws IOException {
+    Path direction = pinDir(bit).resolve("direction");
+    String current = new String(Files.readAllBytes(direction), StandardCharsets.US_ASCII).trim();
+    if (!current.equals(out ? "out" : "in")) {
+      writeString(direction, out ? "out" : "in");
+    }
+    output[bit] = out;
+  }
+
+  public boolean isOutput(int bit) {
+    return output[bit];
+  }
+
+  @Override
+  public void write(int bit, boolean value) throws IOException {
+    ByteBuffer buffer = value ? one : zero;
+    buffer.clear();
+    values[bit].write(buffer, 0);
+  }
+
+  public boolean read(int bit) throws IOException {
+    readBuffer.clear();
+    values[bit].read(readBuffer, 0);
+    return readBuffer.get(0) == '1';
+  }
+
+  private static void writeString(Path file, String value) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (int i = 0; i < pins.length; i++) {
+      try {
+        if (values[i] != null) {
+          values[i].close();
+          values[i] = null;
+        }
+        if (exported[i]) {
+          writeString(root.resolve("unexport"), Integer.toString(pins[i]));
+          exported[i] = false;
+        }
+      } catch (IOException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
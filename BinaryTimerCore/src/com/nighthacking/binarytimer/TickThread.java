@@ -0,0 +1,109 @@
+package com.nighthacking.binarytimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dedicated thread for a TimerLoop, optionally pinned to one CPU and run
+ * with a real-time (SCHED_FIFO) priority so that nothing else gets scheduled
+ * in front of a tick.
+ *
+ * Java can't do either of these itself, so the thread looks up its own
+ * Linux task id in /proc/thread-self and runs taskset and chrt on it. Raising
+ * the priority needs root (or CAP_SYS_NICE); if a command isn't there or
+ * isn't allowed, a warning is logged and the thread runs anyway.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TickThread extends Thread {
+
+  private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+  private final int cpu;
+  private final int priority;
+  private volatile boolean pinned;
+  private volatile boolean realtime;
+
+  /**
+   * @param cpu CPU to pin the thread to, or -1 to let it float
+   * @param priority SCHED_FIFO priority (1-99), or 0 to keep the normal
+   * scheduler
+   */
+  public TickThread(Runnable target, String name, int cpu, int priority) {
+    super(target, name);
+    this.cpu = cpu;
+    this.priority = priority;
+  }
+
+  @Override
+  public void run() {
+    if (cpu >= 0 || priority > 0) {
+      String tid = taskId();
+      if (tid != null) {
+        if (cpu >= 0) {
+          pinned = exec("taskset", "-p", "-c", Integer.toString(cpu), tid);
+        }
+        if (priority > 0) {
+          realtime = exec("chrt", "-f", "-p", Integer.toString(priority), tid);
+        }
+      }
+    }
+    super.run();
+  }
+
+  /**
+   * @return the Linux task id of the calling thread, or null if it can't be
+   * found (not Linux, or a kernel older than 3.17)
+   */
+  public static String taskId() {
+    try {
+      // links to <pid>/task/<tid>
+      return Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+    } catch (IOException | UnsupportedOperationException ex) {
+      Logger.getLogger(TickThread.class.getName()).log(Level.WARNING, "Can't find the thread's task id", ex);
+      return null;
+    }
+  }
+
+  private static boolean exec(String... command) {
+    try {
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[256];
+      int read;
+      while ((read = process.getInputStream().read(buffer)) > 0) {
+        output.write(buffer, 0, read);
+      }
+      if (process.waitFor() == 0) {
+        return true;
+      }
+      Logger.getLogger(TickThread.class.getName()).log(Level.WARNING, "{0} failed: {1}",
+          new Object[]{String.join(" ", command), output.toString().trim()});
+    } catch (IOException ex) {
+      Logger.getLogger(TickThread.class.getName()).log(Level.WARNING, null, ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * Whether pinning worked; only meaningful once the thread has started.
+   */
+  public boolean isPinned() {
+    return pinned;
+  }
+
+  /**
+   * Whether the real-time priority was applied; only meaningful once the
+   * thread has started.
+   */
+  public boolean isRealtime() {
+    return realtime;
+  }
+}
@@ -0,0 +1,14 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * Monotonic nanosecond clock, so the timing logic can be driven by something
+ * other than System.nanoTime() (e.g. a simulated clock running flat out).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public interface TimeSource {
+
+  public static final TimeSource SYSTEM = System::nanoTime;
+
+  public long nanoTime();
+}
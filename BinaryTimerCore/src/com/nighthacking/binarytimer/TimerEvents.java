@@ -0,0 +1,87 @@
+package com.nighthacking.binarytimer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hooks for recording what a timer is doing, as it happens (see
+ * FlightEvents in BinaryTimerJFR for the Java Flight Recorder version). The
+ * tick and frame pairs are only called from the loop thread; button and
+ * debounce come from whichever thread saw them.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public interface TimerEvents {
+
+  /**
+   * The clock is due to tick; tickEnd follows once the step is done with it
+   * (including the frame it renders).
+   */
+  public void tickBegin();
+
+  /**
+   * @param lateness how long after its deadline the tick was handled
+   * @param missed ticks skipped because the loop fell behind (so far)
+   */
+  public void tickEnd(long counter, long lateness, long missed);
+
+  /**
+   * A frame is about to go to the LEDs.
+   */
+  public void frameBegin();
+
+  public void frameEnd(long frame);
+
+  /**
+   * @param latency from the edge to the loop applying it (0 if dropped)
+   * @param dropped true if the command queue was full
+   */
+  public void button(int button, boolean pressed, long latency, boolean dropped);
+
+  /**
+   * A debouncer decided what to do with an edge.
+   *
+   * @param decision "accepted", "debounced", "settling", "repeated" (the
+   * same value again) or "trailing" (a change during the window, passed on
+   * when it closed)
+   */
+  public void debounce(int pin, boolean value, String decision);
+
+  /**
+   * @return Flight Recorder events, or null if this JVM has no JFR (Java 8
+   * before 8u262) or BinaryTimerJFR.jar isn't on the classpath
+   */
+  public static TimerEvents flightRecorder() {
+    return flightRecorder(null);
+  }
+
+  /**
+   * Same as flightRecorder(), but also starts recording the events with the
+   * settings bundled in BinaryTimerJFR.jar (see FlightEvents.record).
+   *
+   * @param file where the recording is dumped when the JVM exits, or null
+   * to leave recording to -XX:StartFlightRecording
+   */
+  public static TimerEvents flightRecorder(String file) {
+    // FlightEvents is built separately, so that this project still builds on
+    // a JDK without jdk.jfr
+    Class<?> type;
+    try {
+      Class.forName("jdk.jfr.FlightRecorder");
+      type = Class.forName("com.nighthacking.binarytimer.FlightEvents");
+    } catch (ClassNotFoundException ex) {
+      Logger.getLogger(TimerEvents.class.getName()).log(Level.WARNING,
+          "No Flight Recorder in this JVM, or BinaryTimerJFR.jar is not on the classpath");
+      return null;
+    }
+    try {
+      if (file != null) {
+        type.getMethod("record", String.class).invoke(null, file);
+      }
+      return (TimerEvents) type.getConstructor().newInstance();
+    } catch (ReflectiveOperationException ex) {
+      Logger.getLogger(TimerEvents.class.getName()).log(Level.SEVERE, null, ex);
+      return null;
+    }
+  }
+}
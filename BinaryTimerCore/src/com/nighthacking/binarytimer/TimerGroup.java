@@ -0,0 +1,278 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs any number of independent timers (one per station in a lab, say) on
+ * a single thread. Each timer has its own TimerState, LEDs (or whatever
+ * sink it renders to), tick period and clock; the buttons act on it just as
+ * they do on a TimerLoop, except that holding red doesn't shut anything down.
+ *
+ * A running timer is one entry on a HierarchicalWheel, due at its next
+ * tick, so the thread only wakes when some timer is due and each wakeup
+ * only costs as much as the timers that are due then. Paused timers cost
+ * nothing at all. The wheel's resolution is how late a tick can be, so keep
+ * it well under the shortest period.
+ *
+ * Button edits come in through submit() from any thread; everything else is
+ * only touched by the group thread. Nothing is allocated once the timers
+ * are added.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimerGroup implements Runnable {
+
+  private static final long BLINK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+  private final class Timer extends HierarchicalWheel.Entry {
+
+    private final TimerState state;
+    private final LedBank leds;
+    private final ClockEngine clock;
+    private final long period;
+    private long nextTick;
+
+    private Timer(TimerState state, LedBank leds, long period, TimeUnit unit) {
+      this.state = state;
+      this.leds = leds;
+      this.period = unit.toNanos(period);
+      this.clock = new ClockEngine(period, unit, time);
+    }
+
+    @Override
+    protected void expire(long tick) {
+      tick(this);
+    }
+  }
+
+  private final Timer[] timers;
+  private final HierarchicalWheel wheel;
+  private final long resolution;
+  private final TimeSource time;
+  private final CommandQueue commands;
+  private final LogLinearHistogram stepTime = new LogLinearHistogram();
+  private final LogLinearHistogram lateness = new LogLinearHistogram();
+  private final AtomicLong dropped = new AtomicLong();
+  private final long origin;
+  private int size;
+  private long now;
+  private long ticks;
+  private volatile Thread owner;
+  private volatile boolean running;
+
+  /**
+   * @param capacity most timers the group can hold
+   * @param resolution tick of the timing wheel
+   */
+  public TimerGroup(int capacity, long resolution, TimeUnit unit) {
+    this(capacity, resolution, unit, TimeSource.SYSTEM);
+  }
+
+  public TimerGroup(int capacity, long resolution, TimeUnit unit, TimeSource time) {
+    this.timers = new Timer[capacity];
+    this.resolution = unit.toNanos(resolution);
+    this.time = time;
+    this.origin = time.nanoTime();
+    this.wheel = new HierarchicalWheel(0);
+    this.commands = new CommandQueue(Math.max(64, Math.min(capacity, 4096)));
+  }
+
+  /**
+   * Adds a timer, which starts counting straight away if its state isn't
+   * paused. Call before run().
+   *
+   * @return the timer's index, for submit()
+   */
+  public int add(TimerState state, LedBank leds, long period, TimeUnit unit) {
+    if (size == timers.length) {
+      throw new IllegalStateException("Group is full (" + size + " timers)");
+    }
+    timers[size] = new Timer(state, leds, period, unit);
+    return size++;
+  }
+
+  /**
+   * Queues a button event for one of the timers; safe to call from any
+   * thread.
+   *
+   * @param button one of the TimerState button constants
+   * @return false if the event was dropped because the queue was full
+   */
+  public boolean submit(int timer, int button, boolean pressed) {
+    if (timer < 0 || timer >= size) {
+      throw new IndexOutOfBoundsException("No timer " + timer);
+    }
+    if (commands.offer(timer << 3 | button << 1 | (pressed ? 1 : 0))) {
+      LockSupport.unpark(owner);
+      return true;
+    }
+    dropped.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Runs the group on the calling thread until stop() is called.
+   */
+  @Override
+  public void run() {
+    start();
+    while (running) {
+      long wait = step();
+      if (wait == Long.MAX_VALUE) {
+        LockSupport.park(this);
+      } else if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+      }
+    }
+  }
+
+  /**
+   * Makes the calling thread the group thread and shows every timer's
+   * first frame, without running the loop. For driving the group by hand
+   * with step().
+   */
+  public void start() {
+    owner = Thread.currentThread();
+    running = true;
+    now = time.nanoTime();
+    for (int i = 0; i < size; i++) {
+      Timer timer = timers[i];
+      if (!timer.state.isPaused() && !timer.isScheduled()) {
+        timer.clock.advance(timer.state.getCounter(), now);
+        schedule(timer, now + timer.period);
+      }
+      show(timer, now);
+    }
+  }
+
+  /**
+   * One pass: tick every timer that is due, then apply queued button
+   * events.
+   *
+   * @return nanoseconds until the next timer is due, or Long.MAX_VALUE if
+   * they are all paused
+   */
+  public long step() {
+    long start = time.nanoTime();
+    now = start;
+    wheel.advance(Math.floorDiv(now - origin, resolution));
+    int command;
+    while ((command = commands.poll()) != CommandQueue.EMPTY) {
+      handle(timers[command >>> 3], command >>> 1 & 0x3, (command & 0x1) != 0);
+    }
+    long next = wheel.nextDeadline();
+    long end = time.nanoTime();
+    stepTime.record(end - start);
+    return next == Long.MAX_VALUE ? next : origin + next * resolution - end;
+  }
+
+  private void tick(Timer timer) {
+    // If the thread fell behind, go straight to the latest tick
+    long due = timer.nextTick + (now - timer.nextTick) / timer.period * timer.period;
+    lateness.record(now - due);
+    ticks++;
+    if (timer.clock.advance(timer.state.getCounter(), due)) {
+      timer.state.setCounter(timer.clock.getCounter());
+    }
+    show(timer, due);
+    schedule(timer, due + timer.period);
+  }
+
+  private void handle(Timer timer, int button, boolean pressed) {
+    if (!pressed) {
+      return; // the buttons only act on the press
+    }
+    boolean wasPaused = timer.state.isPaused();
+    if (!wasPaused && now - timer.nextTick >= 0) {
+      tick(timer); // a tick that is due but hasn't come round on the wheel
+    }
+    timer.state.press(button);
+    if (wasPaused && !timer.state.isPaused()) {
+      timer.clock.advance(timer.state.getCounter(), now);
+      schedule(timer, now + timer.period);
+    } else if (!wasPaused && timer.state.isPaused()) {
+      wheel.cancel(timer);
+      timer.clock.stop();
+    }
+    show(timer, now);
+  }
+
+  private void schedule(Timer timer, long tick) {
+    timer.nextTick = tick;
+    // round up, so a timer is never ticked early
+    wheel.schedule(timer, Math.floorDiv(tick - origin + resolution - 1, resolution));
+  }
+
+  private void show(Timer timer, long at) {
+    long frame = timer.state.getCounter();
+    if (!timer.state.isPaused() && frame <= 0 && Math.floorDiv(at, BLINK_INTERVAL) % 2 == 0) {
+      frame = 0;
+    }
+    try {
+      timer.leds.show(frame);
+    } catch (IOException ex) {
+      Logger.getLogger(TimerGroup.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  public void stop() {
+    running = false;
+    LockSupport.unpark(owner);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The state of one timer; only look at it from the group thread (or once
+   * the group has stopped).
+   */
+  public TimerState getState(int timer) {
+    return timers[timer].state;
+  }
+
+  public ClockEngine getClock(int timer) {
+    return timers[timer].clock;
+  }
+
+  /**
+   * Number of timers currently running (on the wheel).
+   */
+  public int getRunning() {
+    return wheel.size();
+  }
+
+  /**
+   * Timer ticks processed so far, across all timers.
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Time each step() took, in nanoseconds.
+   */
+  public LogLinearHistogram getStepTime() {
+    return stepTime;
+  }
+
+  /**
+   * How late each timer tick was processed, in nanoseconds.
+   */
+  public LogLinearHistogram getLateness() {
+    return lateness;
+  }
+
+  /**
+   * Button events thrown away because the queue was full.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,469 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a timer on a single thread: button events from the GPIO listener
+ * threads are queued with submit(), and the loop thread applies them between
+ * clock ticks. The counter, the LEDs and the clock are only ever touched by
+ * the loop thread, so there are no locks and no lost edits.
+ *
+ * Buttons can also be polled from the loop thread itself (see pollButtons),
+ * in which case there are no listener threads at all.
+ *
+ * Holding the red button for 3 seconds calls the shutdown action and ends
+ * the loop. Alongside the queue, the loop keeps the latest level of every
+ * button (written whether or not the queue had room), and a hold only counts
+ * while red is still down there, so a release dropped from a full queue
+ * can't turn into a shutdown.
+ *
+ * By default the loop wakes up on every tick. In event driven mode (see
+ * setEventDriven) it only wakes when the LEDs can actually change: it parks
+ * until the next button event while paused, and sleeps through the dark half
+ * of the expiry blink.
+ *
+ * In counting mode (see setHandoff) the loop doesn't drive the LEDs at all;
+ * it hands the time over to a RenderStage on another thread.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimerLoop implements Runnable {
+
+  private static final long SHUTDOWN_HOLD = TimeUnit.SECONDS.toNanos(3);
+  private static final long BLINK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+  private final TimerState state;
+  private final LedBank leds;
+  private final ClockEngine clock;
+  private final TimeSource time;
+  private final Runnable shutdown;
+  private final long period;
+  private final CommandQueue commands = new CommandQueue(64);
+  private final TimerMetrics metrics;
+  private final long[] edges = new long[4];
+  private int pendingEdges;
+  private long lastTick;
+  private volatile Thread owner;
+  private volatile boolean running;
+  private long nextTick;
+  private long skipTo;
+  private long stepTime;
+  private boolean dirty;
+  private boolean eventDriven;
+  private long spin;
+  private LatestValue handoff;
+  private TraceRecorder trace;
+  private BroadcastServer broadcast;
+  private Checkpoint checkpoint;
+  private FrameExport export;
+  private TimerEvents events;
+  private ButtonSampler sampler;
+  private IntegratingDebouncer debouncer;
+  private long samplePeriod;
+  private long nextSample;
+  private long sampleTime;
+  private final IntegratingDebouncer.Listener polled = (button, pressed) -> {
+    setLevel(button, pressed);
+    handle(button, pressed, sampleTime);
+  };
+  private long redPressed;
+  private boolean redHeld;
+  // bit i set while button i is down, as of its latest edge
+  private final AtomicInteger levels = new AtomicInteger();
+  private volatile long applied;
+  private final AtomicLong dropped = new AtomicLong();
+
+  public TimerLoop(TimerState state, LedBank leds, long period, TimeUnit unit, Runnable shutdown) {
+    this(state, leds, period, unit, shutdown, TimeSource.SYSTEM);
+  }
+
+  public TimerLoop(TimerState state, LedBank leds, long period, TimeUnit unit, Runnable shutdown, TimeSource time) {
+    this.state = state;
+    this.leds = leds;
+    this.period = unit.toNanos(period);
+    this.clock = new ClockEngine(period, unit, time);
+    this.metrics = new TimerMetrics(clock);
+    this.time = time;
+    this.shutdown = shutdown;
+  }
+
+  /**
+   * Switches to polled input: every sample period the loop thread reads all
+   * the buttons in one go and debounces them with an IntegratingDebouncer.
+   * Call before run().
+   *
+   * @param threshold consecutive (net) samples needed to change state
+   */
+  public void pollButtons(ButtonSampler sampler, long period, TimeUnit unit, int threshold) {
+    this.sampler = sampler;
+    this.samplePeriod = unit.toNanos(period);
+    this.debouncer = new IntegratingDebouncer(4, threshold);
+  }
+
+  /**
+   * Only wake up when the display can change, instead of on every tick. The
+   * LEDs show exactly the same frames either way. Call before run().
+   */
+  public void setEventDriven(boolean eventDriven) {
+    this.eventDriven = eventDriven;
+  }
+
+  /**
+   * Parks until this long before each deadline and then spins the rest of
+   * the way, trading some CPU for much tighter ticks than parkNanos alone
+   * gives. Worth it for the 125us millisecond timer; use a TickThread pinned
+   * to its own CPU so the spinning doesn't starve anything. Call before run().
+   */
+  public void setSpinWait(long spin, TimeUnit unit) {
+    this.spin = unit.toNanos(spin);
+  }
+
+  /**
+   * Switches to counting mode: instead of showing frames on the LEDs (which
+   * can then be null), the loop publishes the time to the handoff for a
+   * RenderStage. While the clock runs the value is the nanoTime deadline at
+   * which it reaches 0, shifted left one with the low bit set, so the reader
+   * can work out the remaining time to the nanosecond whenever it looks.
+   * Otherwise it is the remaining time in nanoseconds, shifted left one.
+   * Call before run().
+   */
+  public void setHandoff(LatestValue handoff) {
+    this.handoff = handoff;
+  }
+
+  /**
+   * Records every tick, frame and button edge into the trace. Call before
+   * run().
+   */
+  public void setTrace(TraceRecorder trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * Publishes the counter and paused state to remote displays whenever the
+   * LEDs are rendered. Call before run().
+   */
+  public void setBroadcast(BroadcastServer broadcast) {
+    this.broadcast = broadcast;
+  }
+
+  /**
+   * Saves the counter and paused state whenever the LEDs are rendered, so a
+   * restart can pick up from there (see Checkpoint.restore). Call before
+   * run().
+   */
+  public void setCheckpoint(Checkpoint checkpoint) {
+    this.checkpoint = checkpoint;
+  }
+
+  /**
+   * Publishes the counter and paused state to local readers whenever the
+   * LEDs are rendered (see FrameExport.Reader). Call before run().
+   */
+  public void setExport(FrameExport export) {
+    this.export = export;
+  }
+
+  /**
+   * Reports ticks, frames and button edges as they happen (see
+   * TimerEvents.flightRecorder). Call before run().
+   */
+  public void setEvents(TimerEvents events) {
+    this.events = events;
+  }
+
+  /**
+   * Queues a button event; safe to call from any thread.
+   *
+   * @param button one of the TimerState button constants
+   * @return false if the event was dropped because the queue was full
+   */
+  public boolean submit(int button, boolean pressed) {
+    setLevel(button, pressed);
+    if (commands.offer(button << 1 | (pressed ? 1 : 0), time.nanoTime())) {
+      LockSupport.unpark(owner);
+      return true;
+    }
+    dropped.incrementAndGet();
+    if (events != null) {
+      events.button(button, pressed, 0, true);
+    }
+    return false;
+  }
+
+  private void setLevel(int button, boolean pressed) {
+    int bit = 1 << button;
+    int old;
+    do {
+      old = levels.get();
+    } while (!levels.compareAndSet(old, pressed ? old | bit : old & ~bit));
+  }
+
+  /**
+   * Runs the loop on the calling thread until the timer is shut down or
+   * stop() is called.
+   */
+  @Override
+  public void run() {
+    start();
+    while (running) {
+      long wait = step();
+      if (wait == Long.MAX_VALUE) {
+        LockSupport.park(this);
+      } else if (wait > spin) {
+        LockSupport.parkNanos(this, wait - spin);
+      } else if (wait > 0) {
+        SpinWait.until(time.nanoTime() + wait, time);
+      }
+    }
+  }
+
+  /**
+   * Makes the calling thread the loop thread and shows the first frame,
+   * without running the loop. For driving the loop by hand with step().
+   */
+  public void start() {
+    owner = Thread.currentThread();
+    running = true;
+    nextTick = time.nanoTime();
+    nextSample = nextTick;
+    if (trace != null) {
+      trace.start(nextTick, state.getCounter(), period);
+    }
+    render(nextTick);
+  }
+
+  /**
+   * One pass of the loop: apply queued events, then tick the clock if it is
+   * due.
+   *
+   * @return nanoseconds until the loop needs to run again, or Long.MAX_VALUE
+   * if it can sleep until the next button event
+   */
+  public long step() {
+    long now = time.nanoTime();
+    stepTime = now;
+    metrics.wakeup();
+    drain();
+    if (sampler != null && now - nextSample >= 0) {
+      sampleButtons(now);
+      while (now - nextSample >= 0) {
+        nextSample += samplePeriod;
+      }
+    }
+    if (eventDriven && !clock.isRunning() && now - nextTick > 0) {
+      // Slept through the ticks while paused; stay on the same tick grid, so
+      // the clock restarts on the tick it would have otherwise
+      nextTick += (now - nextTick + period - 1) / period * period;
+    }
+    if (eventDriven && clock.isRunning() && now - nextTick > 0 && (state.isPaused() || now - skipTo < 0)) {
+      // Woke up for a button in the middle of a skipped stretch: catch the
+      // counter up to the last tick before now, like a loop that never
+      // skipped would have. Those ticks were all blank, so there is nothing
+      // new to show unless the button changed something.
+      long last = nextTick + (now - nextTick - 1) / period * period;
+      if (clock.advance(state.getCounter(), last)) {
+        state.setCounter(clock.getCounter());
+        if (trace != null) {
+          trace.tick(last, clock.getCounter());
+        }
+      }
+      nextTick = last + period;
+    }
+    long lateness = -1;
+    if (eventDriven && state.isPaused()) {
+      clock.stop();
+      lastTick = 0;
+    } else if (now - nextTick >= 0) {
+      lateness = now - nextTick;
+      if (events != null) {
+        events.tickBegin();
+      }
+      if (lastTick != 0) {
+        metrics.tickInterval(now - lastTick);
+      }
+      lastTick = now;
+      if (!state.isPaused()) {
+        if (clock.advance(state.getCounter())) {
+          state.setCounter(clock.getCounter());
+          dirty = true;
+          if (trace != null) {
+            trace.tick(now, clock.getCounter());
+          }
+        }
+      } else {
+        clock.stop();
+      }
+      nextTick += ((now - nextTick) / period + 1) * period;
+    }
+    if (redHeld && (levels.get() & 1 << TimerState.RED) == 0) {
+      redHeld = false; // its release was dropped, or is still in the queue
+    }
+    if (redHeld && now - redPressed >= SHUTDOWN_HOLD) {
+      redHeld = false;
+      running = false;
+      shutdown.run();
+      return 0;
+    }
+    if (dirty) {
+      dirty = false;
+      render(now);
+    }
+    if (events != null && lateness >= 0) {
+      events.tickEnd(state.getCounter(), lateness, clock.getMissedTicks());
+    }
+    long next = nextTick;
+    if (eventDriven) {
+      if (state.isPaused()) {
+        next = Long.MAX_VALUE;
+      } else if (clock.isRunning() && state.getCounter() <= 0 && blinkOff(nextTick - period)) {
+        // The last tick blanked the LEDs, and every tick until the blink
+        // comes back on shows the same blank frame, so skip straight to the
+        // first tick after that
+        long blinkOn = (Math.floorDiv(nextTick - period, BLINK_INTERVAL) + 1) * BLINK_INTERVAL;
+        if (blinkOn - nextTick > 0) {
+          next = nextTick + (blinkOn - nextTick + period - 1) / period * period;
+          skipTo = next;
+          clock.skipUntil(next);
+          lastTick = 0;
+        }
+      }
+      if (redHeld) {
+        next = earliest(next, redPressed + SHUTDOWN_HOLD);
+      }
+    }
+    if (sampler != null) {
+      next = earliest(next, nextSample);
+    }
+    return next == Long.MAX_VALUE ? next : next - time.nanoTime();
+  }
+
+  // Long.MAX_VALUE means never
+  private static long earliest(long a, long b) {
+    return a == Long.MAX_VALUE || b - a < 0 ? b : a;
+  }
+
+  private static boolean blinkOff(long now) {
+    return Math.floorDiv(now, BLINK_INTERVAL) % 2 == 0;
+  }
+
+  private void drain() {
+    int command;
+    while ((command = commands.poll()) != CommandQueue.EMPTY) {
+      handle(command >>> 1, (command & 0x1) != 0, commands.getPolledStamp());
+      applied++;
+    }
+  }
+
+  private void sampleButtons(long now) {
+    try {
+      sampleTime = now;
+      debouncer.sample(sampler.sample(), polled);
+    } catch (IOException ex) {
+      Logger.getLogger(TimerLoop.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  private void handle(int button, boolean pressed, long edge) {
+    if (trace != null) {
+      trace.button(stepTime, edge, button, pressed);
+    }
+    if (events != null) {
+      events.button(button, pressed, stepTime - edge, false);
+    }
+    if (button == TimerState.RED) {
+      redHeld = pressed;
+      redPressed = edge;
+    }
+    if (pressed) {
+      state.press(button);
+      dirty = true;
+      // measure from the oldest press not rendered yet
+      if ((pendingEdges & 1 << button) == 0) {
+        pendingEdges |= 1 << button;
+        edges[button] = edge;
+      }
+    }
+  }
+
+  private void render(long now) {
+    long start = time.nanoTime();
+    if (handoff != null) {
+      handoff.publish(!state.isPaused() && clock.isRunning()
+          ? clock.getDeadlineNanos() << 1 | 1
+          : state.getCounter() * period << 1);
+    } else {
+      long frame = state.getCounter();
+      if (!state.isPaused() && frame <= 0 && blinkOff(now)) {
+        frame = 0;
+      }
+      if (events != null) {
+        events.frameBegin();
+      }
+      try {
+        leds.show(frame);
+      } catch (IOException ex) {
+        Logger.getLogger(TimerLoop.class.getName()).log(Level.SEVERE, null, ex);
+      }
+      if (events != null) {
+        events.frameEnd(frame);
+      }
+      if (trace != null) {
+        trace.frame(now, frame);
+      }
+    }
+    if (broadcast != null) {
+      broadcast.publish(state.getCounter(), state.isPaused());
+    }
+    if (checkpoint != null) {
+      checkpoint.save(state.getCounter(), state.isPaused());
+    }
+    if (export != null) {
+      export.publish(state.getCounter(), state.isPaused());
+    }
+    long end = time.nanoTime();
+    metrics.renderTime(end - start);
+    while (pendingEdges != 0) {
+      int button = Integer.numberOfTrailingZeros(pendingEdges);
+      metrics.buttonLatency(button, end - edges[button]);
+      pendingEdges &= pendingEdges - 1;
+    }
+  }
+
+  public void stop() {
+    running = false;
+    LockSupport.unpark(owner);
+  }
+
+  public TimerState getState() {
+    return state;
+  }
+
+  public ClockEngine getClock() {
+    return clock;
+  }
+
+  public TimerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Button events taken off the queue so far.
+   */
+  public long getApplied() {
+    return applied;
+  }
+
+  /**
+   * Button events thrown away because the queue was full.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+}
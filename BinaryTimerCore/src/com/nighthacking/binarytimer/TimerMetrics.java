@@ -0,0 +1,174 @@
+package com.nighthacking.binarytimer;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timing statistics for a TimerLoop, published as an MBean so they can be
+ * watched on a board with jconsole (attach locally, or start the JVM with
+ * -Dcom.sun.management.jmxremote.port=9010 -Dcom.sun.management.jmxremote.host=127.0.0.1
+ * -Dcom.sun.management.jmxremote.authenticate=false -Dcom.sun.management.jmxremote.ssl=false
+ * and connect to localhost:9010 over an ssh tunnel).
+ *
+ * Everything is recorded into preallocated LogLinearHistograms, so the
+ * recording side is allocation free.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimerMetrics implements TimerMetricsMBean {
+
+  private final ClockEngine clock;
+  private final long period;
+  private final LogLinearHistogram tickJitter = new LogLinearHistogram();
+  private final LogLinearHistogram renderTime = new LogLinearHistogram();
+  private final LogLinearHistogram[] buttonLatency = new LogLinearHistogram[4];
+  private volatile long wakeups; // only written by the loop thread
+
+  public TimerMetrics(ClockEngine clock) {
+    this.clock = clock;
+    this.period = clock.getPeriodNanos();
+    for (int i = 0; i < buttonLatency.length; i++) {
+      buttonLatency[i] = new LogLinearHistogram();
+    }
+  }
+
+  /**
+   * Registers under com.nighthacking.binarytimer:type=TimerMetrics,name=...
+   */
+  public void register(String name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          new ObjectName("com.nighthacking.binarytimer:type=TimerMetrics,name=" + name));
+    } catch (JMException ex) {
+      Logger.getLogger(TimerMetrics.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  void wakeup() {
+    wakeups++;
+  }
+
+  void tickInterval(long nanos) {
+    tickJitter.record(Math.abs(nanos - period));
+  }
+
+  void renderTime(long nanos) {
+    renderTime.record(nanos);
+  }
+
+  void buttonLatency(int button, long nanos) {
+    buttonLatency[button].record(nanos);
+  }
+
+  @Override
+  public long getWakeups() {
+    return wakeups;
+  }
+
+  @Override
+  public long getTicks() {
+    return tickJitter.getCount();
+  }
+
+  @Override
+  public long getMissedTicks() {
+    return clock.getMissedTicks();
+  }
+
+  @Override
+  public long getLateTicks() {
+    return clock.getLateTicks();
+  }
+
+  @Override
+  public long getTickJitterP50Micros() {
+    return tickJitter.getPercentile(50) / 1000;
+  }
+
+  @Override
+  public long getTickJitterP99Micros() {
+    return tickJitter.getPercentile(99) / 1000;
+  }
+
+  @Override
+  public long getTickJitterMaxMicros() {
+    return tickJitter.getMax() / 1000;
+  }
+
+  @Override
+  public long getRenders() {
+    return renderTime.getCount();
+  }
+
+  @Override
+  public long getRenderTimeP50Micros() {
+    return renderTime.getPercentile(50) / 1000;
+  }
+
+  @Override
+  public long getRenderTimeP99Micros() {
+    return renderTime.getPercentile(99) / 1000;
+  }
+
+  @Override
+  public long getRenderTimeMaxMicros() {
+    return renderTime.getMax() / 1000;
+  }
+
+  @Override
+  public long[] getButtonEvents() {
+    long[] events = new long[buttonLatency.length];
+    for (int i = 0; i < events.length; i++) {
+      events[i] = buttonLatency[i].getCount();
+    }
+    return events;
+  }
+
+  @Override
+  public long[] getButtonLatencyP50Micros() {
+    return buttonPercentile(50);
+  }
+
+  @Override
+  public long[] getButtonLatencyP99Micros() {
+    return buttonPercentile(99);
+  }
+
+  @Override
+  public long[] getButtonLatencyMaxMicros() {
+    return buttonPercentile(100);
+  }
+
+  private long[] buttonPercentile(double percentile) {
+    long[] micros = new long[buttonLatency.length];
+    for (int i = 0; i < micros.length; i++) {
+      micros[i] = buttonLatency[i].getPercentile(percentile) / 1000;
+    }
+    return micros;
+  }
+
+  public LogLinearHistogram getTickJitter() {
+    return tickJitter;
+  }
+
+  public LogLinearHistogram getRenderTime() {
+    return renderTime;
+  }
+
+  public LogLinearHistogram getButtonLatency(int button) {
+    return buttonLatency[button];
+  }
+
+  @Override
+  public void reset() {
+    wakeups = 0;
+    tickJitter.reset();
+    renderTime.reset();
+    for (LogLinearHistogram histogram : buttonLatency) {
+      histogram.reset();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * What a running timer reports over JMX. Times are in microseconds.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public interface TimerMetricsMBean {
+
+  public long getWakeups();
+
+  public long getTicks();
+
+  public long getMissedTicks();
+
+  public long getLateTicks();
+
+  public long getTickJitterP50Micros();
+
+  public long getTickJitterP99Micros();
+
+  public long getTickJitterMaxMicros();
+
+  public long getRenders();
+
+  public long getRenderTimeP50Micros();
+
+  public long getRenderTimeP99Micros();
+
+  public long getRenderTimeMaxMicros();
+
+  public long[] getButtonEvents();
+
+  public long[] getButtonLatencyP50Micros();
+
+  public long[] getButtonLatencyP99Micros();
+
+  public long[] getButtonLatencyMaxMicros();
+
+  public void reset();
+}
@@ -0,0 +1,97 @@
+package com.nighthacking.binarytimer;
+
+/**
+ * The countdown value and the button edits on it, shared by all the timers.
+ * The counter is in eighths of a time unit: the low 3 (blue) bits are the
+ * fraction, and the rest are whole seconds (or milliseconds). The counter
+ * is 64 bits, and is clipped to the width of the LED bank when the clock
+ * starts.
+ *
+ * Not thread safe; it is owned by whichever thread runs the clock.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimerState {
+
+  public static final int BLUE = 0;
+  public static final int GRAY = 1;
+  public static final int RED = 2;
+  public static final int GREEN = 3;
+
+  private final long clip;
+  private long counter;
+  private boolean paused = true;
+
+  public TimerState(long counter) {
+    this(counter, 17);
+  }
+
+  /**
+   * @param width number of LEDs showing the counter (up to 64)
+   */
+  public TimerState(long counter, int width) {
+    this.counter = counter;
+    this.clip = width >= 64 ? -1 : (1L << width) - 1;
+  }
+
+  /**
+   * Applies a button press (buttons only act on the press, not the release).
+   */
+  public void press(int button) {
+    switch (button) {
+      case BLUE:
+        if (paused) { // Blue Button: Add 1 (and then x2)
+          prepareEdit();
+          counter <<= 1;      // shift the bits (time x2)
+          counter |= 0x8;     // turn on the second bit (+1)
+        }
+        break;
+      case GRAY:
+        if (paused) { // Gray Button: Add 0 (and then x2)
+          prepareEdit();
+          counter <<= 1;      // shift the bits (time x2)
+        }
+        break;
+      case RED: // Red Button: Divide by 2, Pause (Shutdown is up to the caller)
+        if (!paused) {
+          paused = true;
+        } else {
+          prepareEdit();
+          counter >>>= 1;     // shift the bits (time /2)
+          counter &= ~0x4;    // clear the bit shifted off
+        }
+        break;
+      case GREEN: // Green Button: Run/Pause
+        if (paused && counter >= 0) {
+          counter &= clip;    // clip to max leds
+        }
+        paused = !paused;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown button: " + button);
+    }
+  }
+
+  private void prepareEdit() {
+    if (counter < 0) {  // if we went negative, clear out that funk
+      counter = 0;
+    }
+    counter &= ~0xC000000000000007L; // turn off blue leds and high order bits
+  }
+
+  public long getCounter() {
+    return counter;
+  }
+
+  public void setCounter(long counter) {
+    this.counter = counter;
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+}
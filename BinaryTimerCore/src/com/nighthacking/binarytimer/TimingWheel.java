@@ -0,0 +1,148 @@
+package com.nighthacking.binarytimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel: one daemon thread serves any number of timeouts, and
+ * scheduling or cancelling is O(1). Timeouts are reusable objects owned by
+ * the caller, so rescheduling one doesn't allocate anything. Expiry is only
+ * as precise as the tick, and the thread sleeps while nothing is scheduled.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TimingWheel {
+
+  /**
+   * Something that can be scheduled on the wheel; reschedule the same
+   * instance as often as you like.
+   */
+  public static abstract class Timeout {
+
+    private Timeout prev;
+    private Timeout next;
+    private Timeout nextExpired;
+    private long deadlineTick;
+    private boolean scheduled;
+
+    protected abstract void expire();
+  }
+
+  private final long tickNanos;
+  private final Timeout[] buckets;
+  private final int mask;
+  private final String name;
+  private final long origin = System.nanoTime();
+  private long processedTick;
+  private int pending;
+  private Thread thread;
+
+  /**
+   * @param wheelSize number of buckets, rounded up to a power of two
+   */
+  public TimingWheel(long tick, TimeUnit unit, int wheelSize, String name) {
+    this.tickNanos = unit.toNanos(tick);
+    int size = Integer.highestOneBit(Math.max(wheelSize, 2) * 2 - 1);
+    this.buckets = new Timeout[size];
+    this.mask = size - 1;
+    this.name = name;
+  }
+
+  /**
+   * Schedules the timeout to expire after the given delay, replacing any
+   * earlier schedule for it.
+   */
+  public synchronized void schedule(Timeout timeout, long delay, TimeUnit unit) {
+    if (timeout.scheduled) {
+      unlink(timeout);
+    }
+    long deadline = System.nanoTime() - origin + unit.toNanos(delay);
+    timeout.deadlineTick = Math.max((deadline + tickNanos - 1) / tickNanos, processedTick + 1);
+    Timeout head = buckets[(int) timeout.deadlineTick & mask];
+    timeout.prev = null;
+    timeout.next = head;
+    if (head != null) {
+      head.prev = timeout;
+    }
+    buckets[(int) timeout.deadlineTick & mask] = timeout;
+    timeout.scheduled = true;
+    pending++;
+    if (thread == null) {
+      thread = new Thread(this::run, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    notifyAll();
+  }
+
+  /**
+   * @return true if the timeout was still waiting to expire
+   */
+  public synchronized boolean cancel(Timeout timeout) {
+    if (!timeout.scheduled) {
+      return false;
+    }
+    unlink(timeout);
+    return true;
+  }
+
+  public synchronized boolean isScheduled(Timeout timeout) {
+    return timeout.scheduled;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      buckets[(int) timeout.deadlineTick & mask] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.scheduled = false;
+    pending--;
+  }
+
+  private void run() {
+    while (true) {
+      Timeout expired = null;
+      synchronized (this) {
+        try {
+          while (pending == 0) {
+            wait();
+          }
+          long wait = (processedTick + 1) * tickNanos - (System.nanoTime() - origin);
+          if (wait > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+          }
+        } catch (InterruptedException ex) {
+          return;
+        }
+        long now = (System.nanoTime() - origin) / tickNanos;
+        // Visit each bucket at most once, however far behind we are
+        long first = Math.max(processedTick + 1, now - mask);
+        for (long tick = first; tick <= now; tick++) {
+          Timeout timeout = buckets[(int) tick & mask];
+          while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= now) {
+              unlink(timeout);
+              timeout.nextExpired = expired;
+              expired = timeout;
+            }
+            timeout = next;
+          }
+        }
+        processedTick = Math.max(processedTick, now);
+      }
+      // Call out without holding the lock; expire() may reschedule
+      while (expired != null) {
+        Timeout next = expired.nextExpired;
+        expired.nextExpired = null;
+        expired.expire();
+        expired = next;
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a trace written by TraceRecorder. Records are numbered from 0 (the
+ * oldest one still in the ring) to size() - 1 (the newest).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TraceReader {
+
+  private final MappedByteBuffer ring;
+  private final int mask;
+  private final long period;
+  private final long first;
+  private final int size;
+
+  public TraceReader(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ring = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (ring.getInt(0) != TraceRecorder.MAGIC) {
+      throw new IOException("Not a BinaryTimer trace: " + file);
+    }
+    int capacity = ring.getInt(TraceRecorder.CAPACITY_OFFSET);
+    mask = capacity - 1;
+    period = ring.getLong(TraceRecorder.PERIOD_OFFSET);
+    long written = ring.getLong(TraceRecorder.WRITTEN_OFFSET);
+    size = (int) Math.min(written, capacity);
+    first = written - size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the tick period of the recorded loop, in nanoseconds
+   */
+  public long getPeriodNanos() {
+    return period;
+  }
+
+  /**
+   * @return true if the oldest records have been overwritten
+   */
+  public boolean isWrapped() {
+    return first > 0;
+  }
+
+  /**
+   * @return one of the TraceRecorder record types
+   */
+  public int type(int record) {
+    return (int) (ring.getLong(offset(record)) & 0x7);
+  }
+
+  public long time(int record) {
+    return ring.getLong(offset(record)) >> 3;
+  }
+
+  public long value(int record) {
+    return ring.getLong(offset(record) + 8);
+  }
+
+  private int offset(int record) {
+    return TraceRecorder.HEADER + ((int) (first + record) & mask) * TraceRecorder.RECORD;
+  }
+}
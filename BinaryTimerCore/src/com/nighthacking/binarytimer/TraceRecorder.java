@@ -0,0 +1,116 @@
+package com.nighthacking.binarytimer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Flight recorder for a TimerLoop: every clock tick, rendered frame and
+ * button edge goes into a fixed-size ring in a memory-mapped file, so the
+ * last few seconds (or minutes) before a problem survive even if the JVM
+ * doesn't. Recording is two absolute puts into the mapping, with no
+ * allocation and no system calls; see TraceReader and TraceReplayer for the
+ * other end.
+ *
+ * File layout (big-endian): a 32 byte header of magic, capacity (records),
+ * tick period (ns) and number of records ever written, then the ring of 16
+ * byte records. Each record is the nanoTime shifted left 3 bits with the
+ * type in the low 3, followed by a 64-bit value.
+ *
+ * Single writer (the loop thread).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TraceRecorder implements Closeable {
+
+  public static final int MAGIC = 0x42545452; // BTTR
+  public static final int HEADER = 32;
+  public static final int RECORD = 16;
+  static final int CAPACITY_OFFSET = 4;
+  static final int PERIOD_OFFSET = 8;
+  static final int WRITTEN_OFFSET = 16;
+
+  /**
+   * The loop started; value is the counter (paused).
+   */
+  public static final int START = 1;
+  /**
+   * The clock moved on; value is the new counter.
+   */
+  public static final int TICK = 2;
+  /**
+   * A frame went to the LEDs; value is the frame.
+   */
+  public static final int FRAME = 3;
+  /**
+   * A button edge, timed when the loop applied it; value is how long after
+   * the edge that was (in ns) shifted left 3, then button << 1 | pressed.
+   */
+  public static final int BUTTON = 4;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer ring;
+  private final int mask;
+  private long written;
+
+  /**
+   * Creates (or overwrites) the trace file.
+   *
+   * @param capacity number of records kept, rounded up to a power of two
+   */
+  public TraceRecorder(Path file, int capacity) throws IOException {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+    mask = size - 1;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) size * RECORD);
+    ring.putInt(0, MAGIC);
+    ring.putInt(CAPACITY_OFFSET, size);
+    ring.putLong(WRITTEN_OFFSET, 0);
+  }
+
+  public void start(long time, long counter, long period) {
+    ring.putLong(PERIOD_OFFSET, period);
+    record(START, time, counter);
+  }
+
+  public void tick(long time, long counter) {
+    record(TICK, time, counter);
+  }
+
+  public void frame(long time, long frame) {
+    record(FRAME, time, frame);
+  }
+
+  /**
+   * @param time when the loop applied the edge
+   * @param edge when the edge happened
+   */
+  public void button(long time, long edge, int button, boolean pressed) {
+    record(BUTTON, time, (time - edge) << 3 | button << 1 | (pressed ? 1 : 0));
+  }
+
+  private void record(int type, long time, long value) {
+    int at = HEADER + ((int) written & mask) * RECORD;
+    ring.putLong(at, time << 3 | type);
+    ring.putLong(at + 8, value);
+    // count it only once the record is complete
+    ring.putLong(WRITTEN_OFFSET, ++written);
+  }
+
+  public long getWritten() {
+    return written;
+  }
+
+  /**
+   * Flushes the ring to disk (the kernel will get round to it anyway).
+   */
+  @Override
+  public void close() throws IOException {
+    ring.force();
+    channel.close();
+  }
+}
@@ -0,0 +1,202 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the button edges from a trace back into a fresh TimerLoop, at the
+ * times the recorded loop applied them, and checks that at the time of every recorded
+ * frame the replay was showing the same thing, give or take a tick. Either
+ * as fast as possible in simulated time (which reproduces the recorded run
+ * exactly, apart from ticks where the board was running late), or in real
+ * time on a thread of its own. In real time the replay is at the mercy of
+ * its own scheduler: an edge applied a few ticks late shifts every tick
+ * after it, so mismatches there say more about the host than the trace.
+ *
+ * Replay starts at the START record, or if the ring has wrapped past it,
+ * at the oldest TICK (with the timer running).
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class TraceReplayer {
+
+  private final TraceReader trace;
+  private final LedBank leds;
+  private final LedBank checked = new LedBank() {
+    @Override
+    public void show(int frame) throws IOException {
+      show((long) frame);
+    }
+
+    @Override
+    public void show(long frame) throws IOException {
+      compare(frame);
+    }
+  };
+  private final int start;
+  private TimeSource time;
+  private int recorded;
+  private long lastShown;
+  private long lastShownAt;
+  private long previousShown;
+  private boolean shown;
+  private long frames;
+  private long mismatches;
+  private long firstMismatch = -1;
+  private long events;
+  private volatile long offset;
+  private volatile boolean shutdown;
+
+  /**
+   * @param leds where the replayed frames go (such as MemoryPins behind a
+   * FrameRenderer)
+   */
+  public TraceReplayer(TraceReader trace, LedBank leds) {
+    this.trace = trace;
+    this.leds = leds;
+    if (trace.getPeriodNanos() <= 0) {
+      throw new IllegalArgumentException("Trace has no tick period; the loop never started");
+    }
+    int first = 0;
+    while (first < trace.size() && trace.type(first) != TraceRecorder.START && trace.type(first) != TraceRecorder.TICK) {
+      first++;
+    }
+    if (first == trace.size()) {
+      throw new IllegalArgumentException("Trace has no START or TICK record to replay from");
+    }
+    this.start = first;
+    this.recorded = first;
+  }
+
+  /**
+   * Replays the whole trace, returning when it's done.
+   *
+   * @param realtime false for as fast as possible
+   */
+  public void replay(boolean realtime) throws InterruptedException {
+    if (realtime) {
+      replayRealtime();
+    } else {
+      replayFast();
+    }
+  }
+
+  private TimerState newState() {
+    TimerState state = new TimerState(trace.value(start));
+    state.setPaused(trace.type(start) == TraceRecorder.START);
+    return state;
+  }
+
+  private void replayFast() {
+    SimulatedBoard board = new SimulatedBoard(newState(), trace.getPeriodNanos(), TimeUnit.NANOSECONDS,
+        trace.time(start), checked);
+    board.setRecording(false);
+    time = board;
+    for (int i = start + 1; i < trace.size(); i++) {
+      if (trace.type(i) == TraceRecorder.BUTTON) {
+        long value = trace.value(i);
+        board.edge((int) (value >>> 1 & 0x3), (value & 0x1) != 0, trace.time(i));
+        events++;
+      }
+    }
+    board.runUntil(trace.time(trace.size() - 1) + 1);
+    checkUntil(trace.time(trace.size() - 1) + 1, lastShown);
+  }
+
+  private void replayRealtime() throws InterruptedException {
+    offset = System.nanoTime() - trace.time(start);
+    time = () -> System.nanoTime() - offset;
+    TimerLoop loop = new TimerLoop(newState(), checked, trace.getPeriodNanos(), TimeUnit.NANOSECONDS,
+        () -> shutdown = true, time);
+    Thread thread = new Thread(() -> {
+      // line the loop's ticks up with the recorded ones
+      offset = System.nanoTime() - trace.time(start);
+      loop.run();
+    }, "Replay");
+    thread.start();
+    for (int i = start + 1; i < trace.size() && !shutdown; i++) {
+      if (trace.type(i) == TraceRecorder.BUTTON) {
+        sleepUntil(trace.time(i));
+        submit(loop, i);
+      }
+    }
+    sleepUntil(trace.time(trace.size() - 1));
+    loop.stop();
+    thread.join();
+    checkUntil(trace.time(trace.size() - 1) + 1, lastShown);
+  }
+
+  private void sleepUntil(long deadline) {
+    long wait;
+    while (!shutdown && (wait = deadline - time.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, wait);
+    }
+  }
+
+  private void submit(TimerLoop loop, int record) {
+    long value = trace.value(record);
+    while (!loop.submit((int) (value >>> 1 & 0x3), (value & 0x1) != 0)) {
+      Thread.yield();
+    }
+    events++;
+  }
+
+  // Called for every frame the replay renders
+  private void compare(long frame) throws IOException {
+    long now = time.nanoTime();
+    // whatever was recorded before now should match what was showing until now
+    checkUntil(now, frame);
+    shown = true;
+    if (frame != lastShown) {
+      previousShown = lastShown;
+      lastShownAt = now;
+      lastShown = frame;
+    }
+    leds.show(frame);
+  }
+
+  // A recorded frame matches if the replay showed it within a tick of the
+  // recorded time, since either run may have been running a little late
+  private void checkUntil(long end, long next) {
+    long period = trace.getPeriodNanos();
+    for (; recorded < trace.size() && trace.time(recorded) - end < 0; recorded++) {
+      if (trace.type(recorded) == TraceRecorder.FRAME && shown) {
+        long at = trace.time(recorded);
+        long value = trace.value(recorded);
+        frames++;
+        if (value != lastShown
+            && !(value == previousShown && at - lastShownAt < period)
+            && !(value == next && end - at <= period)) {
+          mismatches++;
+          if (firstMismatch < 0) {
+            firstMismatch = trace.time(recorded) - trace.time(start);
+          }
+        }
+      }
+    }
+  }
+
+  public long getEvents() {
+    return events;
+  }
+
+  /**
+   * Recorded frames compared against the replay.
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getMismatches() {
+    return mismatches;
+  }
+
+  /**
+   * @return nanoseconds into the trace of the first frame that didn't match,
+   * or -1
+   */
+  public long getFirstMismatchNanos() {
+    return firstMismatch;
+  }
+}
@@ -0,0 +1,163 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.dio.DeviceManager;
+import jdk.dio.gpio.GPIOPin;
+import jdk.dio.gpio.GPIOPort;
+
+/**
+ * Millisecond timer for DIO. The LEDs are always written as one GPIOPort,
+ * since 17 GPIOPin writes per frame can't keep up with 125us ticks.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class BinaryMillisecondTimerDio {
+
+  // -Dbinarytimer.eventClock=true only wakes the clock thread when the LEDs
+  // can change, rather than on every tick
+  private static final boolean EVENT_CLOCK = Boolean.getBoolean("binarytimer.eventClock");
+
+  // -Dbinarytimer.spinMicros=50 parks until 50us before each tick and spins
+  // the rest of the way. -Dbinarytimer.cpu=3 pins the clock thread to CPU 3
+  // (best with isolcpus=3), and -Dbinarytimer.rtPriority=50 runs it SCHED_FIFO.
+  private static final long SPIN_MICROS = Long.getLong("binarytimer.spinMicros", 0);
+  private static final int CPU = Integer.getInteger("binarytimer.cpu", -1);
+  private static final int RT_PRIORITY = Integer.getInteger("binarytimer.rtPriority", 0);
+
+  // -Dbinarytimer.refreshMicros=1000 keeps the time in nanoseconds and
+  // redraws the LEDs every 1000us from a separate thread, in units of
+  // -Dbinarytimer.resolutionMicros (default 1, so the LEDs count microseconds)
+  private static final long REFRESH_MICROS = Long.getLong("binarytimer.refreshMicros", 0);
+  private static final long RESOLUTION_MICROS = Long.getLong("binarytimer.resolutionMicros", 1);
+
+  // -Dbinarytimer.trace=/tmp/timer.trace records the last million ticks,
+  // frames and button edges to a memory-mapped file (see TraceReplay)
+  private static final String TRACE = System.getProperty("binarytimer.trace");
+
+  // -Dbinarytimer.broadcastPort=7070 publishes the counter over TCP for
+  // remote displays to mirror (see BroadcastServer)
+  private static final int BROADCAST_PORT = Integer.getInteger("binarytimer.broadcastPort", 0);
+
+  // -Dbinarytimer.checkpoint=/var/lib/binarytimer/timer.state keeps the
+  // counter in a file, so a restart carries on where it left off (see
+  // Checkpoint)
+  private static final String CHECKPOINT = System.getProperty("binarytimer.checkpoint");
+
+  // -Dbinarytimer.export=/dev/shm/binarytimer publishes every frame into
+  // shared memory for local dashboards and loggers (see FrameExport)
+  private static final String EXPORT = System.getProperty("binarytimer.export");
+
+  // -Dbinarytimer.jfr=true emits Flight Recorder events for ticks, frames
+  // and button edges (JDK 11+ or 8u262+, with BinaryTimerJFR.jar on the
+  // classpath); -Dbinarytimer.jfr.file=timer.jfr also records them, with the
+  // settings bundled in that jar, to the file when the timer exits
+  private static final boolean JFR = Boolean.getBoolean("binarytimer.jfr");
+  private static final String JFR_FILE = System.getProperty("binarytimer.jfr.file");
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    new BinaryMillisecondTimerDio().run();
+  }
+
+  private final StartupTimer startup = new StartupTimer("BinaryMillisecondTimerDio");
+  private final TimerEvents events = JFR ? TimerEvents.flightRecorder(JFR_FILE) : null;
+  private GPIOPort ledPort;
+  private final GPIOPin[] buttons = new GPIOPin[4];
+  private final LedBank leds = new PortLeds(17, value -> ledPort.setValue(value));
+  // light up all the LEDs initially [32.767s]
+  private final TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), startup.firstFrame(leds), 125000, TimeUnit.NANOSECONDS, () -> {});
+
+  public void run() throws IOException, InterruptedException {
+    initPins();
+    startup.mark("provision");
+    Runtime.getRuntime().addShutdownHook(new Thread(this::closePins));
+    addListeners();
+    loop.setEventDriven(EVENT_CLOCK);
+    loop.setEvents(events);
+    loop.setSpinWait(SPIN_MICROS, TimeUnit.MICROSECONDS);
+    if (TRACE != null) {
+      loop.setTrace(new TraceRecorder(Paths.get(TRACE), 1 << 20));
+    }
+    if (REFRESH_MICROS > 0) {
+      startRenderStage();
+    }
+    if (CHECKPOINT != null) {
+      restoreCheckpoint();
+    }
+    if (BROADCAST_PORT > 0) {
+      startBroadcast();
+    }
+    if (EXPORT != null) {
+      loop.setExport(new FrameExport(Paths.get(EXPORT)));
+    }
+    loop.getMetrics().register("BinaryMillisecondTimerDio");
+    startup.mark("listeners");
+    Thread clock = new TickThread(loop, "Clock", CPU, RT_PRIORITY);
+    clock.start();
+    clock.join();
+  }
+
+  private void restoreCheckpoint() throws IOException {
+    Checkpoint checkpoint = new Checkpoint(Paths.get(CHECKPOINT));
+    checkpoint.restore(loop.getState(), loop.getClock().getPeriodNanos(), TimeUnit.NANOSECONDS);
+    loop.setCheckpoint(checkpoint);
+  }
+
+  private void startBroadcast() throws IOException {
+    BroadcastServer broadcast = new BroadcastServer(new InetSocketAddress(BROADCAST_PORT));
+    loop.setBroadcast(broadcast);
+    Thread thread = new Thread(broadcast, "Broadcast");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void startRenderStage() {
+    LatestValue handoff = new LatestValue(0);
+    loop.setHandoff(handoff);
+    Thread render = new Thread(new RenderStage(handoff, startup.firstFrame(leds), RESOLUTION_MICROS, REFRESH_MICROS, TimeUnit.MICROSECONDS), "Render");
+    render.setDaemon(true);
+    render.start();
+  }
+
+  // Opens the port and the four buttons all at once
+  private void initPins() throws IOException {
+    ParallelInit.forEach(5, i -> {
+      if (i == 4) {
+        ledPort = DioLedPort.open();
+      } else {
+        buttons[i] = DeviceManager.open(i + 18);
+      }
+    });
+  }
+
+  private void closePins() {
+    try {
+      ledPort.close();
+    } catch (IOException ex) {
+      Logger.getLogger(BinaryMillisecondTimerDio.class.getName()).log(Level.SEVERE, null, ex);
+    }
+    for (int i = 0; i < 4; i++) {
+      try {
+        buttons[i].close();
+      } catch (IOException ex) {
+        Logger.getLogger(BinaryMillisecondTimerDio.class.getName()).log(Level.SEVERE, null, ex);
+      }
+    }
+  }
+
+  private void addListeners() throws IOException {
+    for (int i = 0; i < 4; i++) {
+      int button = i; // see TimerState for what each button does
+      DioDebouncer debouncer = new DioDebouncer(new PLHelper(event -> {
+        loop.submit(button, !event.getValue());
+      }));
+      debouncer.setEvents(events);
+      buttons[i].setInputListener(debouncer);
+    }
+  }
+
+}
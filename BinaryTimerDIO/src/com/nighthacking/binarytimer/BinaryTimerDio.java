@@ -1,154 +1,156 @@
 package com.nighthacking.binarytimer;
 
 import java.io.IOException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jdk.dio.DeviceManager;
 import jdk.dio.gpio.GPIOPin;
+import jdk.dio.gpio.GPIOPort;
 
 /**
  * @author Stephen Chin <steveonjava@gmail.com>
  */
 public class BinaryTimerDio {
 
+  // -Dbinarytimer.ledPort=true drives the LEDs as one GPIOPort (one write
+  // per frame) instead of 17 GPIOPins
+  private static final boolean LED_PORT = Boolean.getBoolean("binarytimer.ledPort");
+
+  // -Dbinarytimer.eventClock=true only wakes the clock thread when the LEDs
+  // can change, rather than on every tick
+  private static final boolean EVENT_CLOCK = Boolean.getBoolean("binarytimer.eventClock");
+
+  // -Dbinarytimer.broadcastPort=7070 publishes the counter over TCP for
+  // remote displays to mirror (see BroadcastServer)
+  private static final int BROADCAST_PORT = Integer.getInteger("binarytimer.broadcastPort", 0);
+
+  // -Dbinarytimer.checkpoint=/var/lib/binarytimer/timer.state keeps the
+  // counter in a file, so a restart carries on where it left off (see
+  // Checkpoint)
+  private static final String CHECKPOINT = System.getProperty("binarytimer.checkpoint");
+
+  // -Dbinarytimer.export=/dev/shm/binarytimer publishes every frame into
+  // shared memory for local dashboards and loggers (see FrameExport)
+  private static final String EXPORT = System.getProperty("binarytimer.export");
+
+  // -Dbinarytimer.jfr=true emits Flight Recorder events for ticks, frames
+  // and button edges (JDK 11+ or 8u262+, with BinaryTimerJFR.jar on the
+  // classpath); -Dbinarytimer.jfr.file=timer.jfr also records them, with the
+  // settings bundled in that jar, to the file when the timer exits
+  private static final boolean JFR = Boolean.getBoolean("binarytimer.jfr");
+  private static final String JFR_FILE = System.getProperty("binarytimer.jfr.file");
+
   public static void main(String[] args) throws IOException, InterruptedException {
     new BinaryTimerDio().run();
   }
 
+  private final StartupTimer startup = new StartupTimer("BinaryTimerDio");
+  private final TimerEvents events = JFR ? TimerEvents.flightRecorder(JFR_FILE) : null;
   private final GPIOPin[] leds = new GPIOPin[17];
   private final GPIOPin[] buttons = new GPIOPin[4];
-  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-  private ScheduledFuture<?> future;
-  private int counter = 63 << 3; // light up all the greens initially [63s]
-  private volatile boolean paused = true;
-  private ScheduledFuture<?> shutdownFuture;
+  private GPIOPort ledPort;
+  private final LedBank ledBank = LED_PORT
+      ? new PortLeds(17, value -> ledPort.setValue(value))
+      : pinLeds(leds);
+  // light up all the greens initially [63s]
+  private final TimerLoop loop = new TimerLoop(new TimerState(63 << 3), startup.firstFrame(ledBank), 125, TimeUnit.MILLISECONDS, () -> {});
 
   public void run() throws IOException, InterruptedException {
     initPins();
+    startup.mark("provision");
     Runtime.getRuntime().addShutdownHook(new Thread(this::closePins));
     addListeners();
-    updateLeds();
-    runClock();
-  }
-
-  private void initPins() throws IOException {
-    for (int i = 0; i < 17; i++) {
-      leds[i] = DeviceManager.open(i + 1);
+    loop.setEventDriven(EVENT_CLOCK);
+    loop.setEvents(events);
+    if (CHECKPOINT != null) {
+      restoreCheckpoint();
     }
-    for (int i = 0; i < 4; i++) {
-      buttons[i] = DeviceManager.open(i + 18);
+    if (BROADCAST_PORT > 0) {
+      startBroadcast();
     }
+    if (EXPORT != null) {
+      loop.setExport(new FrameExport(Paths.get(EXPORT)));
+    }
+    loop.getMetrics().register("BinaryTimerDio");
+    startup.mark("listeners");
+    loop.run();
   }
 
-  private void closePins() {
-    for (int i = 0; i < 17; i++) {
-      try {
-        leds[i].close();
-      } catch (IOException ex) {
-        Logger.getLogger(BinaryTimerDio.class.getName()).log(Level.SEVERE, null, ex);
-      }
-    }
-    for (int i = 0; i < 4; i++) {
-      try {
-        buttons[i].close();
-      } catch (IOException ex) {
-        Logger.getLogger(BinaryTimerDio.class.getName()).log(Level.SEVERE, null, ex);
-      }
-    }
+  private void restoreCheckpoint() throws IOException {
+    Checkpoint checkpoint = new Checkpoint(Paths.get(CHECKPOINT));
+    checkpoint.restore(loop.getState(), loop.getClock().getPeriodNanos(), TimeUnit.NANOSECONDS);
+    loop.setCheckpoint(checkpoint);
   }
 
-  private void addListeners() throws IOException {
-    buttons[0].setInputListener(new DioDebouncer(new PLHelper(event -> {
-      if (!event.getValue() && paused) { // Blue Button: Add 1 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        counter |= 0x8;     // turn on the second bit (+1)
-        updateLeds();
-      }
-    })));
-    buttons[1].setInputListener(new DioDebouncer(new PLHelper(event -> {
-      if (!event.getValue() && paused) { // Gray Button: Add 0 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        updateLeds();
-      }
-    })));
-    buttons[2].setInputListener(new DioDebouncer(new PLHelper(event -> {
-      if (!event.getValue()) { // Red Button: Divide by 2, Pause, Shutdown
-        shutdownFuture = executor.schedule(executor::shutdown, 3, TimeUnit.SECONDS);
-        if (!paused) {
-          paused = true;
-        } else {
-          prepareEdit();
-          counter >>>= 1;     // shift the bits (time /2)
-          counter &= ~0x4;    // clear the bit shifted off
-        }
-        updateLeds();
-      } else {
-        shutdownFuture.cancel(false);
-      }
-    })));
-    buttons[3].setInputListener(new DioDebouncer(new PLHelper(event -> {
-      if (!event.getValue()) { // Green Button: Run/Pause
-        if (paused && counter >= 0) {
-          counter &= 0x1FFFF; // clip to max leds
-        }
-        paused = !paused;
-        updateLeds();
-      }
-    })));
+  private void startBroadcast() throws IOException {
+    BroadcastServer broadcast = new BroadcastServer(new InetSocketAddress(BROADCAST_PORT));
+    loop.setBroadcast(broadcast);
+    Thread thread = new Thread(broadcast, "Broadcast");
+    thread.setDaemon(true);
+    thread.start();
   }
 
-  private void prepareEdit() {
-    if (counter < 0) {  // if we went negative, clear out that funk
-      counter = 0;
-    }
-    counter &= ~0xC0000007; // turn off blue leds and high order bits
+  /**
+   * Drives the LED pins 1-17 from config/dio.properties (in leds[0] to
+   * leds[16]) one pin at a time, with pin 17 as bit 0.
+   */
+  static LedBank pinLeds(GPIOPin[] leds) {
+    return new FrameRenderer(17, (bit, value) -> leds[16 - bit].setValue(value));
   }
 
-  private void runClock() throws InterruptedException, IOException {
-    future = executor.scheduleAtFixedRate(() -> {
-      if (!paused) {
-        if (counter <= 0) {
-          if ((System.currentTimeMillis() / 250) % 2 == 0) {
-            setAllLeds(false);
-          } else {
-            updateLeds();
-          }
-        } else {
-          updateLeds();
-        }
-        counter--;
+  // Opens the LEDs and buttons all at once; pins 1-17 are the LEDs and
+  // 18-21 the buttons in config/dio.properties
+  private void initPins() throws IOException {
+    ParallelInit.forEach(LED_PORT ? 5 : 21, i -> {
+      if (LED_PORT && i == 4) {
+        ledPort = DioLedPort.open();
+      } else if (i < 4) {
+        buttons[i] = DeviceManager.open(i + 18);
+      } else {
+        leds[i - 4] = DeviceManager.open(i - 3);
       }
-    }, 0, 125, TimeUnit.MILLISECONDS);
+    });
   }
 
-  private void updateLeds() {
-    for (int i = 0; i < 17; i++) {
-      GPIOPin pin = leds[16 - i];
-      boolean newValue = (counter >> i & 0x1) != 0;
+  private void closePins() {
+    if (ledPort != null) {
       try {
-        if (pin.getValue() != newValue) {
-          pin.setValue(newValue);
-        }
+        ledPort.close();
       } catch (IOException ex) {
         Logger.getLogger(BinaryTimerDio.class.getName()).log(Level.SEVERE, null, ex);
       }
     }
-  }
-
-  private void setAllLeds(boolean value) {
     for (int i = 0; i < 17; i++) {
+      if (leds[i] == null) {
+        continue;
+      }
       try {
-        leds[16 - i].setValue(value);
+        leds[i].close();
       } catch (IOException ex) {
         Logger.getLogger(BinaryTimerDio.class.getName()).log(Level.SEVERE, null, ex);
       }
     }
+    for (int i = 0; i < 4; i++) {
+      try {
+        buttons[i].close();
+      } catch (IOException ex) {
+        Logger.getLogger(BinaryTimerDio.class.getName()).log(Level.SEVERE, null, ex);
+      }
+    }
+  }
+
+  private void addListeners() throws IOException {
+    for (int i = 0; i < 4; i++) {
+      int button = i; // see TimerState for what each button does
+      DioDebouncer debouncer = new DioDebouncer(new PLHelper(event -> {
+        loop.submit(button, !event.getValue());
+      }));
+      debouncer.setEvents(events);
+      buttons[i].setInputListener(debouncer);
+    }
   }
 
 }
@@ -1,8 +1,5 @@
 package com.nighthacking.binarytimer;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import jdk.dio.gpio.PinEvent;
 import jdk.dio.gpio.PinListener;
@@ -10,46 +7,117 @@ import jdk.dio.gpio.PinListener;
 /**
  * Convenience class for DIO that handles button debouncing, so that only 1
  * event gets fired per press or release of a typical switch. Also hides the
- * startup artifacts for GPIO inputs configured with PULL_UP resistors.
- * 
+ * startup artifacts for GPIO inputs configured with PULL_UP resistors, by
+ * ignoring the pin until it has been quiet for a few milliseconds (or for
+ * at most 200ms if it never settles), rather than always for 200ms.
+ *
+ * All debouncers share one timing wheel thread (unless given their own), and
+ * each one reuses the same timeout for every edge.
+ *
  * @author Stephen Chin <steveonjava@gmail.com>
  */
 public class DioDebouncer implements PinListener {
   private static final int STARTUP_INTERVAL = 200;
+  private static final int SETTLE_INTERVAL = 10;
   private static final int DEBOUNCE_INTERVAL = 20;
-  
+  // What happened to each edge (see TimerEvents.debounce)
+  private static final String ACCEPTED = "accepted";
+  private static final String DEBOUNCED = "debounced";
+  private static final String SETTLING = "settling";
+  private static final String REPEATED = "repeated";
+  private static final String TRAILING = "trailing";
+  // Note: the wheel thread is a daemon, so it won't keep the JVM alive
+  private static final TimingWheel SHARED_WHEEL = new TimingWheel(1, TimeUnit.MILLISECONDS, 256, "Debouncer");
+
   private final PinListener action;
+  private final TimingWheel wheel;
+  private final int debounceInterval;
+  private final TimingWheel.Timeout window = new TimingWheel.Timeout() {
+    @Override
+    protected void expire() {
+      windowClosed();
+    }
+  };
+  private final long startupDeadline;
+  private boolean settling = true;
   private int pin = -1;
   private PinEvent lastPE;
-  private Future future;
-  // Note: can't use the default thread pool since it is non-daemon
-  private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1, target -> {
-    Thread t = new Thread(target, "Debouncer for pin[" + pin + "]");
-    t.setDaemon(true);
-    return t;
-  });
-  
+  private PinEvent firedPE;
+  private TimerEvents events;
+
   public DioDebouncer(PinListener action) {
+    this(action, SHARED_WHEEL, STARTUP_INTERVAL, DEBOUNCE_INTERVAL);
+  }
+
+  /**
+   * @param startupInterval most milliseconds to ignore the pin after
+   * creation, if it doesn't settle before then
+   * @param debounceInterval milliseconds to wait after each accepted edge
+   */
+  public DioDebouncer(PinListener action, TimingWheel wheel, int startupInterval, int debounceInterval) {
     this.action = action;
+    this.wheel = wheel;
+    this.debounceInterval = debounceInterval;
     // Get rid of startup wobble from DIO library
-    future = executor.schedule(() -> {}, STARTUP_INTERVAL, TimeUnit.MILLISECONDS);
+    this.startupDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(startupInterval);
+    wheel.schedule(window, Math.min(SETTLE_INTERVAL, startupInterval), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reports what happens to each edge. Call before the pin gets a listener.
+   */
+  public void setEvents(TimerEvents events) {
+    this.events = events;
   }
 
   @Override
   public void valueChanged(PinEvent pe) {
     checkPin(pe);
+    String decision = decide(pe);
+    if (events != null) {
+      events.debounce(pin, pe.getValue(), decision);
+    }
+    if (decision == ACCEPTED) {
+      action.valueChanged(pe);
+    }
+  }
+
+  private synchronized String decide(PinEvent pe) {
     // Remove spurious events with the same value:
-    if (lastPE != null && lastPE.getValue() == pe.getValue()) {return;}
+    if (lastPE != null && lastPE.getValue() == pe.getValue()) {return REPEATED;}
     lastPE = pe;
-    if (!future.isDone()) {return; /* Debounced! */}
-    
-    action.valueChanged(pe);
-    future = executor.schedule(() -> {
-      if (pe.getValue() != lastPE.getValue()) {
-        // Value changed during the debounce interval:
-        action.valueChanged(lastPE);
+    if (settling) {
+      // Still wobbling; wait for another quiet spell
+      long left = startupDeadline - System.nanoTime();
+      if (left > 0) {
+        wheel.schedule(window, Math.min(TimeUnit.MILLISECONDS.toNanos(SETTLE_INTERVAL), left), TimeUnit.NANOSECONDS);
+      }
+      return SETTLING;
+    }
+    if (wheel.isScheduled(window)) {return DEBOUNCED;}
+    firedPE = pe;
+    wheel.schedule(window, debounceInterval, TimeUnit.MILLISECONDS);
+    return ACCEPTED;
+  }
+
+  private void windowClosed() {
+    PinEvent pe;
+    synchronized (this) {
+      if (settling) {
+        settling = false; // whatever it reads now is where it starts from
+        return;
+      }
+      if (firedPE == null || lastPE.getValue() == firedPE.getValue()) {
+        return; // nothing changed during the interval
       }
-    }, DEBOUNCE_INTERVAL, TimeUnit.MILLISECONDS);
+      pe = lastPE;
+      firedPE = null;
+    }
+    // Value changed during the debounce interval:
+    if (events != null) {
+      events.debounce(pin, pe.getValue(), TRAILING);
+    }
+    action.valueChanged(pe);
   }
 
   // Make sure the same Debouncer is not used for multiple pins
@@ -0,0 +1,41 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import jdk.dio.DeviceManager;
+import jdk.dio.gpio.GPIOPinConfig;
+import jdk.dio.gpio.GPIOPort;
+import jdk.dio.gpio.GPIOPortConfig;
+
+/**
+ * Opens the 17 LEDs as a single GPIOPort, so a whole frame is one
+ * setValue(int) instead of 17 GPIOPin writes. Use it instead of (not as well
+ * as) the LED pins 1-17 from config/dio.properties, which drive the same
+ * GPIOs.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class DioLedPort {
+
+  // BCM numbers of LED pins 17 down to 1 in config/dio.properties, so that
+  // port bit i is counter bit i
+  private static final int[] LED_GPIOS = {
+    26, 19, 13, 6, 5, 21, 20, 16, 12, 7, 8, 25, 24, 23, 18, 15, 14
+  };
+
+  public static GPIOPort open() throws IOException {
+    return DeviceManager.open(config());
+  }
+
+  /**
+   * The port open() asks for (PortPathCheck checks its pin order against
+   * the per-pin LEDs).
+   */
+  static GPIOPortConfig config() {
+    GPIOPinConfig[] pins = new GPIOPinConfig[LED_GPIOS.length];
+    for (int i = 0; i < LED_GPIOS.length; i++) {
+      pins[i] = new GPIOPinConfig(0, LED_GPIOS[i], GPIOPinConfig.DIR_OUTPUT_ONLY,
+          GPIOPinConfig.MODE_OUTPUT_PUSH_PULL, GPIOPinConfig.TRIGGER_NONE, false);
+    }
+    return new GPIOPortConfig(GPIOPortConfig.DIR_OUTPUT_ONLY, 0, pins);
+  }
+}
@@ -0,0 +1,211 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for a timer, so a recording shows the clock,
+ * the LEDs and the buttons on the same timeline as GC pauses and
+ * safepoints. Each kind of event is its own type under "Binary Timer", to be
+ * switched on and given a threshold separately (see binarytimer.jfc next
+ * to this class, which records everything slow enough to be visible and
+ * nothing else). While a type is off, its hook is one check of a flag and
+ * allocates nothing (FlightEventsCheck covers this).
+ *
+ * This project needs jdk.jfr to build, so it is kept out of BinaryTimerCore;
+ * TimerEvents.flightRecorder() loads it when it is on the classpath.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FlightEvents implements TimerEvents {
+
+  @Name("binarytimer.ClockTick")
+  @Label("Clock Tick")
+  @Description("A clock tick, from the loop waking up for it to the frame it rendered")
+  @Category({"Binary Timer", "Clock"})
+  @StackTrace(false)
+  @Threshold("1 ms")
+  static class ClockTick extends Event {
+
+    @Label("Counter")
+    long counter;
+
+    @Label("Lateness")
+    @Description("How long after its deadline the tick was handled")
+    @Timespan(Timespan.NANOSECONDS)
+    long lateness;
+
+    @Label("Missed Ticks")
+    long missed;
+  }
+
+  @Name("binarytimer.FrameCommit")
+  @Label("Frame Commit")
+  @Description("A frame written to the LEDs")
+  @Category({"Binary Timer", "LEDs"})
+  @StackTrace(false)
+  @Threshold("500 us")
+  static class FrameCommit extends Event {
+
+    @Label("Frame")
+    long frame;
+
+    @Label("Changed Pins")
+    @Description("Mask of the LEDs that changed from the previous frame")
+    long changed;
+  }
+
+  @Name("binarytimer.ButtonEdge")
+  @Label("Button Edge")
+  @Description("A button press or release reaching the loop")
+  @Category({"Binary Timer", "Buttons"})
+  @StackTrace(false)
+  static class ButtonEdge extends Event {
+
+    @Label("Button")
+    int button;
+
+    @Label("Pressed")
+    boolean pressed;
+
+    @Label("Latency")
+    @Description("From the edge to the loop applying it")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("Dropped")
+    @Description("The command queue was full")
+    boolean dropped;
+  }
+
+  @Name("binarytimer.Debounce")
+  @Label("Debounce")
+  @Description("What a debouncer did with an edge")
+  @Category({"Binary Timer", "Buttons"})
+  @StackTrace(false)
+  @Enabled(false)
+  static class Debounce extends Event {
+
+    @Label("Pin")
+    int pin;
+
+    @Label("Value")
+    boolean value;
+
+    @Label("Decision")
+    String decision;
+  }
+
+  private static final EventType TICK = EventType.getEventType(ClockTick.class);
+  private static final EventType FRAME = EventType.getEventType(FrameCommit.class);
+  private static final EventType BUTTON = EventType.getEventType(ButtonEdge.class);
+  private static final EventType DEBOUNCE = EventType.getEventType(Debounce.class);
+
+  private ClockTick tick;
+  private FrameCommit frame;
+  private long lastFrame;
+
+  /**
+   * The bundled settings (binarytimer.jfc, in the jar next to this class).
+   */
+  public static Configuration settings() throws IOException, ParseException {
+    try (Reader reader = new InputStreamReader(FlightEvents.class.getResourceAsStream("binarytimer.jfc"),
+        StandardCharsets.UTF_8)) {
+      return Configuration.create(reader);
+    }
+  }
+
+  /**
+   * Starts a continuous recording with the bundled settings, kept on disk
+   * for the last 30 minutes (32MB at most) and dumped to the file when the
+   * JVM exits, or with jcmd <pid> JFR.dump before then.
+   */
+  public static void record(String file) throws IOException, ParseException {
+    Recording recording = new Recording(settings());
+    recording.setName("Binary Timer");
+    recording.setToDisk(true);
+    recording.setMaxAge(Duration.ofMinutes(30));
+    recording.setMaxSize(32 << 20);
+    recording.setDestination(Paths.get(file));
+    recording.setDumpOnExit(true);
+    recording.start();
+  }
+
+  @Override
+  public void tickBegin() {
+    if (TICK.isEnabled()) {
+      tick = new ClockTick();
+      tick.begin();
+    }
+  }
+
+  @Override
+  public void tickEnd(long counter, long lateness, long missed) {
+    if (tick != null) {
+      tick.counter = counter;
+      tick.lateness = lateness;
+      tick.missed = missed;
+      tick.commit();
+      tick = null;
+    }
+  }
+
+  @Override
+  public void frameBegin() {
+    if (FRAME.isEnabled()) {
+      frame = new FrameCommit();
+      frame.begin();
+    }
+  }
+
+  @Override
+  public void frameEnd(long value) {
+    if (frame != null) {
+      frame.frame = value;
+      frame.changed = value ^ lastFrame;
+      frame.commit();
+      frame = null;
+    }
+    lastFrame = value;
+  }
+
+  @Override
+  public void button(int button, boolean pressed, long latency, boolean dropped) {
+    if (BUTTON.isEnabled()) {
+      ButtonEdge event = new ButtonEdge();
+      event.button = button;
+      event.pressed = pressed;
+      event.latency = latency;
+      event.dropped = dropped;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void debounce(int pin, boolean value, String decision) {
+    if (DEBOUNCE.isEnabled()) {
+      Debounce event = new Debounce();
+      event.pin = pin;
+      event.value = value;
+      event.decision = decision;
+      event.commit();
+    }
+  }
+}
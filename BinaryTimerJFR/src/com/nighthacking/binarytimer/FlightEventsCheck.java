@@ -0,0 +1,152 @@
+package com.nighthacking.binarytimer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records a simulated 10 second countdown (with a pause and a dropped
+ * button) under the bundled settings profile with the thresholds taken off,
+ * and checks that the recording has one Frame Commit per frame shown, one
+ * Button Edge per edge and a Clock Tick ending on the final counter. Then
+ * times the same countdown with the events installed but not recording,
+ * against none at all, and checks that ticking and rendering with them
+ * installed but not recording allocates nothing once warmed up (measured
+ * the same way as AllocationCheck, which can't see this project).
+ *
+ * Usage: FlightEventsCheck [path to a .jfc, default the bundled one]
+ *
+ * Exits with status 1 if the events can't be loaded, the recording doesn't
+ * match or the events allocate while not recording.
+ *
+ * @author Stephen Chin <steveonjava@gmail.com>
+ */
+public class FlightEventsCheck {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final int RUNS = 200;
+  private static final com.sun.management.ThreadMXBean THREADS
+      = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_BATCHES = 3;
+  private static final int ITERATIONS = 20000;
+
+  private static int shown;
+
+  public static void main(String[] args) throws IOException, ParseException {
+    Recording recording = new Recording(args.length > 0 ? Configuration.create(Paths.get(args[0]))
+        : FlightEvents.settings());
+    recording.enable("binarytimer.ClockTick").withThreshold(Duration.ZERO);
+    recording.enable("binarytimer.FrameCommit").withThreshold(Duration.ZERO);
+    recording.start();
+    TimerEvents events = TimerEvents.flightRecorder();
+    if (!(events instanceof FlightEvents)) {
+      System.out.println("FAILED: TimerEvents.flightRecorder() didn't load FlightEvents");
+      System.exit(1);
+    }
+    SimulatedBoard board = countdown(events);
+    // then fill the command queue, for one button it has no room for
+    for (int i = 0; board.getLoop().submit(TimerState.GRAY, true); i++) {
+      if (i > 1000) {
+        throw new IllegalStateException("Command queue never filled");
+      }
+    }
+    recording.stop();
+    Path file = Files.createTempFile("timer", ".jfr");
+    Map<String, Integer> counts = new HashMap<>();
+    long lastCounter = Long.MIN_VALUE;
+    try {
+      recording.dump(file);
+      recording.close();
+      for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+        String name = event.getEventType().getName();
+        counts.merge(name, 1, Integer::sum);
+        if (name.equals("binarytimer.ClockTick")) {
+          lastCounter = event.getLong("counter");
+        }
+      }
+    } finally {
+      Files.delete(file);
+    }
+    int ticks = counts.getOrDefault("binarytimer.ClockTick", 0);
+    int frames = counts.getOrDefault("binarytimer.FrameCommit", 0);
+    int buttons = counts.getOrDefault("binarytimer.ButtonEdge", 0);
+    System.out.printf("recorded %d ticks, %d frames (%d shown), %d button edges, %d GCs%n", ticks, frames,
+        shown, buttons, counts.getOrDefault("jdk.GarbageCollection", 0));
+    if (frames != shown || buttons != 4 || lastCounter != board.getLoop().getState().getCounter()) {
+      System.out.printf("FAILED: expected %d frames, 4 button edges and a last tick at %d (was %d)%n",
+          shown, board.getLoop().getState().getCounter(), lastCounter);
+      System.exit(1);
+    }
+
+    for (int warmup = 0; warmup < 2; warmup++) {
+      long plain = time(null);
+      long installed = time(events);
+      if (warmup == 1) {
+        System.out.printf("not recording: %dns per countdown without events, %dns with%n", plain, installed);
+      }
+    }
+
+    long allocated = allocated(events);
+    System.out.printf("not recording: %d bytes allocated in %d ticks%n", allocated, ITERATIONS * 8);
+    if (allocated > 0) {
+      System.out.println("FAILED: the events allocate while not recording");
+      System.exit(1);
+    }
+  }
+
+  // Ticking and rendering at 125us with the events installed, as in
+  // AllocationCheck: the least over several batches once the JIT is done
+  private static long allocated(TimerEvents events) {
+    SimulatedBoard board = new SimulatedBoard(new TimerState(0x3FFF << 3), 125000, TimeUnit.NANOSECONDS);
+    board.setRecording(false);
+    board.getLoop().setEvents(events);
+    board.press(TimerState.GREEN, 0, 20, TimeUnit.MILLISECONDS);
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (int i = 0; i < ITERATIONS; i++) {
+        board.runFor(1, TimeUnit.MILLISECONDS);
+      }
+    }
+    long thread = Thread.currentThread().getId();
+    long allocated = Long.MAX_VALUE;
+    for (int batch = 0; batch < MEASURED_BATCHES && allocated > 0; batch++) {
+      long before = THREADS.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < ITERATIONS; i++) {
+        board.runFor(1, TimeUnit.MILLISECONDS);
+      }
+      allocated = Math.min(allocated, THREADS.getThreadAllocatedBytes(thread) - before);
+    }
+    return allocated;
+  }
+
+  private static SimulatedBoard countdown(TimerEvents events) {
+    SimulatedBoard board = new SimulatedBoard(new TimerState(10 << 3), 125, TimeUnit.MILLISECONDS, 0,
+        frame -> shown++);
+    board.setRecording(false);
+    board.getLoop().setEvents(events);
+    board.press(TimerState.GREEN, SECOND, 50, TimeUnit.MILLISECONDS);
+    board.edge(TimerState.GREEN, true, 5 * SECOND);
+    board.runUntil(12 * SECOND);
+    return board;
+  }
+
+  // Average time for a whole countdown, in real nanoseconds
+  private static long time(TimerEvents events) {
+    long start = System.nanoTime();
+    for (int i = 0; i < RUNS; i++) {
+      countdown(events);
+    }
+    return (System.nanoTime() - start) / RUNS;
+  }
+}
@@ -10,10 +10,12 @@ import com.pi4j.io.gpio.event.GpioPinListenerDigital;
 import com.pi4j.wiringpi.Gpio;
 import com.pi4j.wiringpi.GpioUtil;
 import java.io.IOException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author Stephen Chin <steveonjava@gmail.com>
@@ -31,123 +33,215 @@ public class BinaryMillisecondTimerPi4JRaw {
     RaspiPin.GPIO_03
   };
 
+  // -Dbinarytimer.pollButtons=true samples the buttons from the clock thread
+  // instead of taking an interrupt callback per edge (and per bounce)
+  private static final boolean POLL_BUTTONS = Boolean.getBoolean("binarytimer.pollButtons");
+
+  // -Dbinarytimer.eventClock=true only wakes the clock thread when the LEDs
+  // can change, rather than on every tick
+  private static final boolean EVENT_CLOCK = Boolean.getBoolean("binarytimer.eventClock");
+
+  // -Dbinarytimer.spinMicros=50 parks until 50us before each tick and spins
+  // the rest of the way. -Dbinarytimer.cpu=3 pins the clock thread to CPU 3
+  // (best with isolcpus=3), and -Dbinarytimer.rtPriority=50 runs it SCHED_FIFO.
+  private static final long SPIN_MICROS = Long.getLong("binarytimer.spinMicros", 0);
+  private static final int CPU = Integer.getInteger("binarytimer.cpu", -1);
+  private static final int RT_PRIORITY = Integer.getInteger("binarytimer.rtPriority", 0);
+
+  // -Dbinarytimer.refreshMicros=1000 keeps the time in nanoseconds and
+  // redraws the LEDs every 1000us from a separate thread, in units of
+  // -Dbinarytimer.resolutionMicros (default 1, so the LEDs count microseconds)
+  private static final long REFRESH_MICROS = Long.getLong("binarytimer.refreshMicros", 0);
+  private static final long RESOLUTION_MICROS = Long.getLong("binarytimer.resolutionMicros", 1);
+
+  // -Dbinarytimer.trace=/tmp/timer.trace records the last million ticks,
+  // frames and button edges to a memory-mapped file (see TraceReplay)
+  private static final String TRACE = System.getProperty("binarytimer.trace");
+
+  // -Dbinarytimer.broadcastPort=7070 publishes the counter over TCP for
+  // remote displays to mirror (see BroadcastServer)
+  private static final int BROADCAST_PORT = Integer.getInteger("binarytimer.broadcastPort", 0);
+
+  // -Dbinarytimer.checkpoint=/var/lib/binarytimer/timer.state keeps the
+  // counter in a file, so a restart carries on where it left off (see
+  // Checkpoint)
+  private static final String CHECKPOINT = System.getProperty("binarytimer.checkpoint");
+
+  // -Dbinarytimer.export=/dev/shm/binarytimer publishes every frame into
+  // shared memory for local dashboards and loggers (see FrameExport)
+  private static final String EXPORT = System.getProperty("binarytimer.export");
+
+  // -Dbinarytimer.jfr=true emits Flight Recorder events for ticks, frames
+  // and button edges (JDK 11+ or 8u262+, with BinaryTimerJFR.jar on the
+  // classpath); -Dbinarytimer.jfr.file=timer.jfr also records them, with the
+  // settings bundled in that jar, to the file when the timer exits
+  private static final boolean JFR = Boolean.getBoolean("binarytimer.jfr");
+  private static final String JFR_FILE = System.getProperty("binarytimer.jfr.file");
+
   public static void main(String[] args) throws IOException, InterruptedException {
     new BinaryMillisecondTimerPi4JRaw().run();
   }
 
+  private final StartupTimer startup = new StartupTimer("BinaryMillisecondTimerPi4JRaw");
+  private final TimerEvents events = JFR ? TimerEvents.flightRecorder(JFR_FILE) : null;
   private GpioController gpio;
+  private ByteBuffer registers;
+  private SysfsGpio sysfs;
+  private LedBank leds;
   private final GpioPinDigitalInput[] buttons = new GpioPinDigitalInput[BUTTON_PINS.length];
-  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-  private int counter = 0x3FFF << 3; // light up all the LEDs initially [32.767s]
-  private volatile boolean paused = true;
-  private ScheduledFuture<?> shutdownFuture;
+  // light up all the LEDs initially [32.767s]
+  private final TimerLoop loop = new TimerLoop(new TimerState(0x3FFF << 3), startup.firstFrame(frame -> leds.show(frame)), 125000, TimeUnit.NANOSECONDS, this::shutdown);
 
   public void run() throws IOException, InterruptedException {
     initPins();
-    addListeners();
-    updateLeds();
-    runClock();
+    if (POLL_BUTTONS) {
+      loop.pollButtons(openButtons(), 1, TimeUnit.MILLISECONDS, 5);
+    } else {
+      addListeners();
+    }
+    loop.setEventDriven(EVENT_CLOCK);
+    loop.setEvents(events);
+    loop.setSpinWait(SPIN_MICROS, TimeUnit.MICROSECONDS);
+    if (TRACE != null) {
+      loop.setTrace(new TraceRecorder(Paths.get(TRACE), 1 << 20));
+    }
+    if (REFRESH_MICROS > 0) {
+      startRenderStage();
+    }
+    if (CHECKPOINT != null) {
+      restoreCheckpoint();
+    }
+    if (BROADCAST_PORT > 0) {
+      startBroadcast();
+    }
+    if (EXPORT != null) {
+      loop.setExport(new FrameExport(Paths.get(EXPORT)));
+    }
+    loop.getMetrics().register("BinaryMillisecondTimerPi4JRaw");
+    startup.mark("listeners");
+    Thread clock = new TickThread(loop, "Clock", CPU, RT_PRIORITY);
+    clock.start();
+    clock.join();
+  }
+
+  private void restoreCheckpoint() throws IOException {
+    Checkpoint checkpoint = new Checkpoint(Paths.get(CHECKPOINT));
+    checkpoint.restore(loop.getState(), loop.getClock().getPeriodNanos(), TimeUnit.NANOSECONDS);
+    loop.setCheckpoint(checkpoint);
+  }
+
+  private void startBroadcast() throws IOException {
+    BroadcastServer broadcast = new BroadcastServer(new InetSocketAddress(BROADCAST_PORT));
+    loop.setBroadcast(broadcast);
+    Thread thread = new Thread(broadcast, "Broadcast");
+    thread.setDaemon(true);
+    thread.start();
   }
 
-  private void initPins() {
+  private void startRenderStage() {
+    LatestValue handoff = new LatestValue(0);
+    loop.setHandoff(handoff);
+    Thread render = new Thread(new RenderStage(handoff, startup.firstFrame(leds), RESOLUTION_MICROS, REFRESH_MICROS, TimeUnit.MICROSECONDS), "Render");
+    render.setDaemon(true);
+    render.start();
+  }
+
+  // Exports the LEDs all at once, since that is mostly waiting on sysfs and
+  // udev, then does everything that touches shared registers one pin at a
+  // time: pinMode is a read-modify-write of a GPFSEL register (ten pins to
+  // each), pull-ups go through one GPPUD sequence for the whole chip, and
+  // Pi4J's provisioning isn't thread safe
+  private void initPins() throws IOException {
     gpio = GpioFactory.getInstance();
-    for (int i = 0; i < 17; i++) {
-      if (!GpioUtil.isExported(LED_PINS[i])) {
-        GpioUtil.export(LED_PINS[i], GpioUtil.DIRECTION_OUT);
-      } else {
-        GpioUtil.setDirection(LED_PINS[i], GpioUtil.DIRECTION_OUT);
-      }
-      Gpio.pinMode(LED_PINS[i], Gpio.OUTPUT);
+    startup.mark("gpio");
+    ParallelInit.forEach(LED_PINS.length, i -> exportLed(LED_PINS[i]));
+    startup.mark("export");
+    for (int pin : LED_PINS) {
+      Gpio.pinMode(pin, Gpio.OUTPUT);
     }
     for (int i = 0; i < 4; i++) {
       buttons[i] = gpio.provisionDigitalInputPin(BUTTON_PINS[i], PinPullResistance.PULL_UP);
     }
+    startup.mark("provision");
+    leds = openLeds();
+    startup.mark("leds");
+  }
+
+  // Each sysfs write is slow, so leave pins that are already exported as
+  // outputs alone
+  private static void exportLed(int pin) {
+    if (!GpioUtil.isExported(pin)) {
+      GpioUtil.export(pin, GpioUtil.DIRECTION_OUT);
+    } else if (GpioUtil.getDirection(pin) != GpioUtil.DIRECTION_OUT) {
+      GpioUtil.setDirection(pin, GpioUtil.DIRECTION_OUT);
+    }
   }
   
-  private void shutdown() {
-    executor.shutdown();
-    for (int i = 0; i < 17; i++) {
-      GpioUtil.unexport(LED_PINS[i]);
+  // Prefer committing whole frames through /dev/gpiomem. Without it (not in
+  // the gpio group, or an older kernel) wiringPi has no registers either, so
+  // fall back to the sysfs value files the pins were exported with, kept open
+  // for the whole run, and only then to one digitalWrite per pin
+  private LedBank openLeds() {
+    int[] gpioPins = new int[LED_PINS.length];
+    for (int i = 0; i < LED_PINS.length; i++) {
+      gpioPins[i] = Gpio.wpiPinToGpio(LED_PINS[i]);
+    }
+    try {
+      registers = GpioRegisterLeds.map(GpioRegisterLeds.GPIOMEM);
+      return new GpioRegisterLeds(registers, gpioPins);
+    } catch (IOException ex) {
+      Logger.getLogger(BinaryMillisecondTimerPi4JRaw.class.getName()).log(Level.WARNING, "Falling back to sysfs", ex);
+    }
+    try {
+      sysfs = new SysfsGpio(gpioPins);
+      return new FrameRenderer(17, sysfs);
+    } catch (IOException ex) {
+      Logger.getLogger(BinaryMillisecondTimerPi4JRaw.class.getName()).log(Level.WARNING, "Falling back to digitalWrite", ex);
+      return new FrameRenderer(17, (bit, value) -> Gpio.digitalWrite(LED_PINS[bit], value ? 1 : 0));
     }
-    gpio.shutdown();
   }
 
-  private void addListeners() throws IOException {
-    buttons[0].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow() && paused) { // Blue Button: Add 1 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        counter |= 0x8;     // turn on the second bit (+1)
-        updateLeds();
-      }
-    });
-    buttons[1].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow() && paused) { // Gray Button: Add 0 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        updateLeds();
-      }
-    });
-    buttons[2].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow()) { // Red Button: Divide by 2, Pause, Shutdown
-        shutdownFuture = executor.schedule(this::shutdown, 3, TimeUnit.SECONDS);
-        if (!paused) {
-          paused = true;
-        } else {
-          prepareEdit();
-          counter >>>= 1;     // shift the bits (time /2)
-          counter &= ~0x4;    // clear the bit shifted off
-        }
-        updateLeds();
-      } else {
-        shutdownFuture.cancel(false);
-      }
-    });
-    buttons[3].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow()) { // Green Button: Run/Pause
-        if (paused && counter >= 0) {
-          counter &= 0x1FFFF; // clip to max leds
-        }
-        paused = !paused;
-        updateLeds();
+  // One GPLEV0 read per sample when the registers are mapped, otherwise a
+  // digitalRead per button
+  private ButtonSampler openButtons() {
+    if (registers != null) {
+      int[] gpioPins = new int[BUTTON_PINS.length];
+      for (int i = 0; i < BUTTON_PINS.length; i++) {
+        gpioPins[i] = Gpio.wpiPinToGpio(BUTTON_PINS[i].getAddress());
       }
-    });
-  }
-
-  private void prepareEdit() {
-    if (counter < 0) {  // if we went negative, clear out that funk
-      counter = 0;
+      return new GpioRegisterButtons(registers, gpioPins);
     }
-    counter &= ~0xC0000007; // turn off blue leds and high order bits
-  }
-
-  private void runClock() throws InterruptedException, IOException {
-    executor.scheduleAtFixedRate(() -> {
-      if (!paused) {
-        if (counter <= 0) {
-          if ((System.currentTimeMillis() / 250) % 2 == 0) {
-            setAllLeds(0);
-          } else {
-            updateLeds();
-          }
-        } else {
-          updateLeds();
+    return () -> {
+      int pressed = 0;
+      for (int i = 0; i < BUTTON_PINS.length; i++) {
+        if (Gpio.digitalRead(BUTTON_PINS[i].getAddress()) == 0) {
+          pressed |= 1 << i;
         }
-        counter--;
       }
-    }, 0, 125000, TimeUnit.NANOSECONDS);
+      return pressed;
+    };
   }
 
-  private void updateLeds() {
+  private void shutdown() {
+    if (sysfs != null) {
+      try {
+        sysfs.close();
+      } catch (IOException ex) {
+        Logger.getLogger(BinaryMillisecondTimerPi4JRaw.class.getName()).log(Level.SEVERE, null, ex);
+      }
+    }
     for (int i = 0; i < 17; i++) {
-      int newValue = counter >> i & 0x1;
-      Gpio.digitalWrite(LED_PINS[i], newValue);
+      GpioUtil.unexport(LED_PINS[i]);
     }
+    gpio.shutdown();
   }
 
-  private void setAllLeds(int value) {
-    for (int i = 0; i < 17; i++) {
-      Gpio.digitalWrite(LED_PINS[i], value);
+  private void addListeners() throws IOException {
+    for (int i = 0; i < 4; i++) {
+      int button = i; // see TimerState for what each button does
+      buttons[i].addListener((GpioPinListenerDigital) event -> {
+        loop.submit(button, event.getState().isLow());
+      });
     }
   }
 
@@ -8,9 +8,9 @@ import com.pi4j.io.gpio.Pin;
 import com.pi4j.io.gpio.PinPullResistance;
 import com.pi4j.io.gpio.RaspiPin;
 import com.pi4j.io.gpio.event.GpioPinListenerDigital;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,121 +45,155 @@ public class BinaryTimerPi4J {
     RaspiPin.GPIO_03
   };
 
-  public static void main(String[] args) {
+  // -Dbinarytimer.pollButtons=true samples the buttons from the clock thread
+  // instead of taking a (bouncy) interrupt callback per edge
+  private static final boolean POLL_BUTTONS = Boolean.getBoolean("binarytimer.pollButtons");
+
+  // -Dbinarytimer.eventClock=true only wakes the clock thread when the LEDs
+  // can change, rather than on every tick
+  private static final boolean EVENT_CLOCK = Boolean.getBoolean("binarytimer.eventClock");
+
+  // -Dbinarytimer.shiftRegisterWidth=32 drives a chain of 74HC595s (8 LEDs
+  // each, up to 64) from the first three LED pins (data, clock and latch)
+  // instead of 17 LEDs on their own pins
+  private static final int SHIFT_REGISTER_WIDTH = Integer.getInteger("binarytimer.shiftRegisterWidth", 0);
+
+  // -Dbinarytimer.blueBrightness=2 dims the three fraction (blue) LEDs to
+  // 2/7 with binary code modulation, refreshed at 100Hz
+  private static final int BLUE_BRIGHTNESS = Integer.getInteger("binarytimer.blueBrightness", -1);
+
+  // -Dbinarytimer.broadcastPort=7070 publishes the counter over TCP for
+  // remote displays to mirror (see BroadcastServer)
+  private static final int BROADCAST_PORT = Integer.getInteger("binarytimer.broadcastPort", 0);
+
+  // -Dbinarytimer.checkpoint=/var/lib/binarytimer/timer.state keeps the
+  // counter in a file, so a restart carries on where it left off (see
+  // Checkpoint)
+  private static final String CHECKPOINT = System.getProperty("binarytimer.checkpoint");
+
+  // -Dbinarytimer.export=/dev/shm/binarytimer publishes every frame into
+  // shared memory for local dashboards and loggers (see FrameExport)
+  private static final String EXPORT = System.getProperty("binarytimer.export");
+
+  // -Dbinarytimer.jfr=true emits Flight Recorder events for ticks, frames
+  // and button edges (JDK 11+ or 8u262+, with BinaryTimerJFR.jar on the
+  // classpath); -Dbinarytimer.jfr.file=timer.jfr also records them, with the
+  // settings bundled in that jar, to the file when the timer exits
+  private static final boolean JFR = Boolean.getBoolean("binarytimer.jfr");
+  private static final String JFR_FILE = System.getProperty("binarytimer.jfr.file");
+
+  public static void main(String[] args) throws IOException {
     new BinaryTimerPi4J().run();
   }
 
+  private final StartupTimer startup = new StartupTimer("BinaryTimerPi4J");
+  private final TimerEvents events = JFR ? TimerEvents.flightRecorder(JFR_FILE) : null;
   private GpioController gpio;
   private final GpioPinDigitalOutput[] leds = new GpioPinDigitalOutput[LED_PINS.length];
   private final GpioPinDigitalInput[] buttons = new GpioPinDigitalInput[BUTTON_PINS.length];
-  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-  private int counter = 63 << 3; // light up all the greens initially [63s]
-  private volatile boolean paused = true;
-  private ScheduledFuture<?> shutdownFuture;
+  private final LedBank ledBank = SHIFT_REGISTER_WIDTH > 0
+      ? new ShiftRegisterLeds(SHIFT_REGISTER_WIDTH, (line, value) -> leds[line].setState(value))
+      : new FrameRenderer(17, (bit, value) -> leds[16 - bit].setState(value));
+  private final BcmEngine dimmer = BLUE_BRIGHTNESS >= 0 ? new BcmEngine(ledBank, 3, 10, TimeUnit.MILLISECONDS) : null;
+  private Thread dimmerThread;
+  // light up all the greens initially [63s]
+  private final TimerLoop loop = new TimerLoop(new TimerState(63 << 3, SHIFT_REGISTER_WIDTH > 0 ? SHIFT_REGISTER_WIDTH : 17),
+      startup.firstFrame(dimmer != null ? dimmer : ledBank), 125, TimeUnit.MILLISECONDS, this::shutdown);
 
-  public void run() {
+  public void run() throws IOException {
     initPins();
-    addListeners();
-    updateLeds();
-    runClock();
+    if (POLL_BUTTONS) {
+      loop.pollButtons(this::sampleButtons, 1, TimeUnit.MILLISECONDS, 5);
+    } else {
+      addListeners();
+    }
+    loop.setEventDriven(EVENT_CLOCK);
+    loop.setEvents(events);
+    if (dimmer != null) {
+      dimmer.setBrightness(0x7, BLUE_BRIGHTNESS);
+      dimmerThread = new Thread(dimmer, "BCM");
+      dimmerThread.setDaemon(true);
+      dimmerThread.start();
+    }
+    if (CHECKPOINT != null) {
+      restoreCheckpoint();
+    }
+    if (BROADCAST_PORT > 0) {
+      startBroadcast();
+    }
+    if (EXPORT != null) {
+      loop.setExport(new FrameExport(Paths.get(EXPORT)));
+    }
+    loop.getMetrics().register("BinaryTimerPi4J");
+    startup.mark("listeners");
+    loop.run();
+  }
+
+  private void restoreCheckpoint() throws IOException {
+    Checkpoint checkpoint = new Checkpoint(Paths.get(CHECKPOINT));
+    checkpoint.restore(loop.getState(), loop.getClock().getPeriodNanos(), TimeUnit.NANOSECONDS);
+    loop.setCheckpoint(checkpoint);
   }
 
+  private void startBroadcast() throws IOException {
+    BroadcastServer broadcast = new BroadcastServer(new InetSocketAddress(BROADCAST_PORT));
+    loop.setBroadcast(broadcast);
+    Thread thread = new Thread(broadcast, "Broadcast");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  // Provisions the buttons and LEDs one at a time: Pi4J's provisioning isn't
+  // thread safe, and underneath it the pin modes (ten pins to a GPFSEL
+  // register) and pull-ups (one GPPUD sequence for the whole chip) are
+  // read-modify-writes of shared registers
   private void initPins() {
     gpio = GpioFactory.getInstance();
-    for (int i = 0; i < 17; i++) {
-      leds[i] = gpio.provisionDigitalOutputPin(LED_PINS[i]);
-    }
+    startup.mark("gpio");
     for (int i = 0; i < 4; i++) {
-      buttons[i] = gpio.provisionDigitalInputPin(BUTTON_PINS[i], PinPullResistance.PULL_UP);
-      buttons[i].setDebounce(20);
+      GpioPinDigitalInput button = gpio.provisionDigitalInputPin(BUTTON_PINS[i], PinPullResistance.PULL_UP);
+      if (!POLL_BUTTONS) {
+        button.setDebounce(20);
+      }
+      buttons[i] = button;
+    }
+    for (int i = 0; i < (SHIFT_REGISTER_WIDTH > 0 ? 3 : 17); i++) {
+      leds[i] = gpio.provisionDigitalOutputPin(LED_PINS[i]);
     }
+    startup.mark("provision");
   }
   
+  // The BCM thread has to be done with the pins before they are shut down
+  // under it; it stops at the end of the refresh it is in (10ms)
   private void shutdown() {
-    executor.shutdown();
+    if (dimmer != null) {
+      dimmer.stop();
+      try {
+        dimmerThread.join(1000);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
     gpio.shutdown();
   }
 
   private void addListeners() {
-    buttons[0].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow() && paused) { // Blue Button: Add 1 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        counter |= 0x8;     // turn on the second bit (+1)
-        updateLeds();
-      }
-    });
-    buttons[1].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow() && paused) { // Gray Button: Add 0 (and then x2)
-        prepareEdit();
-        counter <<= 1;      // shift the bits (time x2)
-        updateLeds();
-      }
-    });
-    buttons[2].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow()) { // Red Button: Divide by 2, Pause, Shutdown
-        shutdownFuture = executor.schedule(this::shutdown, 3, TimeUnit.SECONDS);
-        if (!paused) {
-          paused = true;
-        } else {
-          prepareEdit();
-          counter >>>= 1;     // shift the bits (time /2)
-          counter &= ~0x4;    // clear the bit shifted off
-        }
-        updateLeds();
-      } else {
-        shutdownFuture.cancel(false);
-      }
-    });
-    buttons[3].addListener((GpioPinListenerDigital) event -> {
-      if (event.getState().isLow()) { // Green Button: Run/Pause
-        if (paused && counter >= 0) {
-          counter &= 0x1FFFF; // clip to max leds
-        }
-        paused = !paused;
-        updateLeds();
-      }
-    });
-  }
-
-  private void prepareEdit() {
-    if (counter < 0) {  // if we went negative, clear out that funk
-      counter = 0;
+    for (int i = 0; i < 4; i++) {
+      int button = i; // see TimerState for what each button does
+      buttons[i].addListener((GpioPinListenerDigital) event -> {
+        loop.submit(button, event.getState().isLow());
+      });
     }
-    counter &= ~0xC0000007; // turn off blue leds and high order bits
-  }
-
-  private void runClock() {
-    executor.scheduleAtFixedRate(() -> {
-      if (!paused) {
-        if (counter <= 0) {
-          if ((System.currentTimeMillis() / 250) % 2 == 0) {
-            setAllLeds(false);
-          } else {
-            updateLeds();
-          }
-        } else {
-          updateLeds();
-        }
-        counter--;
-      }
-    }, 0, 125, TimeUnit.MILLISECONDS);
   }
 
-  private void updateLeds() {
-    for (int i = 0; i < 17; i++) {
-      GpioPinDigitalOutput pin = leds[16 - i];
-      boolean newValue = (counter >> i & 0x1) != 0;
-      if (pin.getState().isHigh() != newValue) {
-        pin.setState(newValue);
+  private int sampleButtons() {
+    int pressed = 0;
+    for (int i = 0; i < 4; i++) {
+      if (buttons[i].isLow()) {
+        pressed |= 1 << i;
       }
     }
-  }
-
-  private void setAllLeds(boolean value) {
-    for (int i = 0; i < 17; i++) {
-      leds[16 - i].setState(value);
-    }
+    return pressed;
   }
 
 }